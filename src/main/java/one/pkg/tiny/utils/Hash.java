@@ -1,28 +1,38 @@
 package one.pkg.tiny.utils;
 
+import one.pkg.tiny.utils.hash.AsyncHash;
+import one.pkg.tiny.utils.hash.DigestPool;
+import one.pkg.tiny.utils.hash.HashAlgorithm;
+import one.pkg.tiny.utils.hash.Hasher;
+import one.pkg.tiny.utils.hash.Hex;
+import one.pkg.tiny.utils.hash.ParallelFileHash;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Hashing helpers, SHA-256 unless a {@link HashAlgorithm} is given.
+ * <p>
+ * All methods are thread-safe: every call borrows its own digest from a shared {@link DigestPool},
+ * so concurrent callers never need external locking.
+ */
 public class Hash {
-    private static final MessageDigest digest;
+    private static final DigestPool pool = HashAlgorithm.SHA_256.pool();
 
-    static {
-        try {
-            digest = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Creates a reusable SHA-256 {@link Hasher} for incremental hashing of streamed data.
+     *
+     * @return a new hasher
+     */
+    public static Hasher newHasher() {
+        return Hasher.digest("SHA-256");
     }
 
     public static byte[] hash(byte[] data) {
-        return digest.digest(data);
+        return pool.digest(data);
     }
 
     public static byte[] hash(@NotNull String data) {
@@ -36,25 +46,80 @@ public class Hash {
     }
 
     public static byte[] hash(@NotNull Path file) throws Exception {
+        return hash(HashAlgorithm.SHA_256, file);
+    }
+
+    /**
+     * Hashes the given data with the specified algorithm.
+     *
+     * @param algorithm the hash algorithm
+     * @param data      the data to hash
+     * @return the hash, {@link HashAlgorithm#getLength()} bytes long
+     */
+    public static byte[] hash(@NotNull HashAlgorithm algorithm, byte @NotNull [] data) {
+        Validate.notNull(algorithm, "Algorithm must not be null");
+        return algorithm.hash(data);
+    }
+
+    /**
+     * Hashes the content of a file with the specified algorithm.
+     *
+     * @param algorithm the hash algorithm
+     * @param file      the file to hash
+     * @return the hash, {@link HashAlgorithm#getLength()} bytes long
+     * @throws Exception if the file cannot be read
+     */
+    public static byte[] hash(@NotNull HashAlgorithm algorithm, @NotNull Path file) throws Exception {
+        Validate.notNull(algorithm, "Algorithm must not be null");
         Validate.notNull(file, "File must not be null");
         if (!file.toFile().exists()) throw new IllegalArgumentException("File does not exist: " + file);
         if (!file.toFile().isFile()) throw new IllegalArgumentException("File is not a file: " + file);
-        try (BufferedInputStream bis = new BufferedInputStream(Files.newInputStream(file))) {
-            byte[] buffer = new byte[65536];
-            int bytesRead;
+        return algorithm.hash(file);
+    }
+
+    /**
+     * Hashes a file without blocking the caller, using the {@link AsyncHash#getDefault() default} async hasher.
+     *
+     * @param file the file to hash
+     * @return a future completed with the SHA-256 digest
+     */
+    public static CompletableFuture<byte[]> hashAsync(@NotNull File file) {
+        Validate.notNull(file, "File must not be null");
+        return hashAsync(file.toPath());
+    }
+
+    /**
+     * Hashes a file without blocking the caller, using the {@link AsyncHash#getDefault() default} async hasher.
+     *
+     * @param file the file to hash
+     * @return a future completed with the SHA-256 digest
+     */
+    public static CompletableFuture<byte[]> hashAsync(@NotNull Path file) {
+        return AsyncHash.getDefault().hash(file);
+    }
 
-            while ((bytesRead = bis.read(buffer)) != -1) {
-                digest.update(buffer, 0, bytesRead);
-            }
-            return digest.digest();
-        } finally {
-            digest.reset();
-        }
+    /**
+     * Hashes a large file in parallel using memory-mapped segments.
+     * <p>
+     * The result is a tree digest as documented in {@link ParallelFileHash}, not the plain SHA-256 of the file;
+     * use {@link ParallelFileHash#flatHash(Path)} when the plain digest is required.
+     *
+     * @param file the file to hash
+     * @return the 32-byte tree digest
+     * @throws Exception if the file cannot be read
+     */
+    public static byte[] hashParallel(@NotNull Path file) throws Exception {
+        return ParallelFileHash.treeHash(file);
     }
 
+    /**
+     * Formats a hash as a lower-case hexadecimal string.
+     *
+     * @param hash the hash bytes
+     * @return the hexadecimal representation
+     * @see Hex
+     */
     public static String format(byte[] hash) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : hash) sb.append(String.format("%02x", b));
-        return sb.toString();
+        return Hex.encode(hash);
     }
 }
@@ -0,0 +1,72 @@
+package one.pkg.tiny.utils;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free, bounded queue of idle objects, on which the buffer, digest and codec pools of this library
+ * are built.
+ * <p>
+ * The pools lend an object per call and take it back afterwards rather than keeping one per thread in a
+ * {@link ThreadLocal}, which would pin an instance to every thread that ever used it and grow without bound
+ * with short-lived or virtual threads. At most {@code maxIdle} objects are retained; whatever
+ * {@link #offer(Object)} rejects is left to the caller to dispose of.
+ *
+ * @param <T> the type of the pooled objects
+ */
+@ApiStatus.Internal
+public final class IdleQueue<T> {
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger count = new AtomicInteger();
+    private final int maxIdle;
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param maxIdle the maximum number of idle objects retained
+     */
+    public IdleQueue(@Range(from = 0, to = Integer.MAX_VALUE) int maxIdle) {
+        if (maxIdle < 0) throw new IllegalArgumentException("maxIdle must not be negative");
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Takes an idle object.
+     *
+     * @return the object, or {@code null} if the queue is empty
+     */
+    public @Nullable T poll() {
+        T value = queue.poll();
+        if (value != null) count.decrementAndGet();
+        return value;
+    }
+
+    /**
+     * Adds an idle object unless the queue is full.
+     *
+     * @param value the object
+     * @return {@code true} if the object was retained, {@code false} if the caller has to dispose of it
+     */
+    public boolean offer(@NotNull T value) {
+        if (count.incrementAndGet() > maxIdle) {
+            count.decrementAndGet();
+            return false;
+        }
+        queue.offer(value);
+        return true;
+    }
+
+    /**
+     * Returns the number of idle objects.
+     *
+     * @return the number of idle objects
+     */
+    public int size() {
+        return count.get();
+    }
+}
@@ -0,0 +1,44 @@
+package one.pkg.tiny.utils;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the executors this library runs blocking work on when the caller does not supply one.
+ */
+@ApiStatus.Internal
+public final class Threads {
+    private Threads() {
+    }
+
+    /**
+     * Creates an executor for tasks that block on I/O: one virtual thread per task when the runtime supports
+     * virtual threads (Java 21+), otherwise a pool of daemon threads, one per available processor, that end
+     * after a minute without work. Callers keep the executor for as long as they need it.
+     *
+     * @param name the name of the threads of the fallback pool
+     * @return a new executor
+     */
+    public static ExecutorService newBlockingExecutor(@NotNull String name) {
+        Validate.notNull(name, "Name must not be null");
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
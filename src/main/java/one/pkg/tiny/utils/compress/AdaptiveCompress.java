@@ -0,0 +1,307 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A codec that picks the best of several codecs per stream by trial-compressing a sample of its beginning.
+ * <p>
+ * The first {@code sampleSize} bytes of every stream are buffered and compressed with each candidate.
+ * Candidates that are unavailable, e.g. because their optional dependency is missing, or that compress the
+ * sample slower than the throughput budget are skipped; among the rest the one with the smallest output wins.
+ * If no candidate meets the budget, the fastest one is used. If even the winner saves too little, the data
+ * is stored raw.
+ * <p>
+ * Streams start with one header byte, {@code 0} for raw data or {@code 1} for compressed data, followed by the
+ * data itself. Compressed data is decoded through {@link CompressDetector}, so the reader needs no knowledge of
+ * the chosen codec or of this codec's configuration; candidates must therefore produce a format the detector
+ * recognizes, which is verified once per candidate on first use.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * ICompress codec = AdaptiveCompress.builder().minThroughput(100).build();
+ * codec.compress(in, out);
+ * }</pre>
+ */
+public final class AdaptiveCompress implements ICompress {
+    /**
+     * The default sample size, 64 KiB.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 64 * 1024;
+    private static final int RAW = 0;
+    private static final int COMPRESSED = 1;
+    private static final ICompress INSTANCE = builder().build();
+
+    private final List<ICompress> candidates;
+    private final int sampleSize;
+    private final double minThroughput;
+    private final double maxRatio;
+    private volatile List<ICompress> readable;
+
+    private AdaptiveCompress(Builder builder) {
+        this.candidates = builder.candidates.isEmpty()
+                ? List.of(ZstdCompress.getInstance(), BrotliCompress.builder().quality(5).framed(true).build(),
+                Lz4Compress.getInstance(), BaseCompress.DEFLATE)
+                : List.copyOf(builder.candidates);
+        this.sampleSize = builder.sampleSize;
+        this.minThroughput = builder.minThroughput;
+        this.maxRatio = builder.maxRatio;
+    }
+
+    /**
+     * Returns a codec choosing between zstd, brotli, LZ4 and deflate with the default budget.
+     *
+     * @return the shared codec
+     */
+    public static ICompress getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a builder for a configured codec.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Chooses the codec for data starting with the given sample.
+     *
+     * @param sample the sample
+     * @param offset the start offset in {@code sample}
+     * @param length the length of the sample
+     * @return the chosen codec, or {@code null} if the data should be stored raw
+     */
+    public @Nullable ICompress choose(byte @NotNull [] sample, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, sample.length);
+        List<ICompress> readable = warmUp();
+        byte[] data = offset == 0 && length == sample.length ? sample : Arrays.copyOfRange(sample, offset, offset + length);
+        ICompress best = null;
+        int bestSize = Integer.MAX_VALUE;
+        ICompress fastest = null;
+        int fastestSize = Integer.MAX_VALUE;
+        long fastestNanos = Long.MAX_VALUE;
+        for (ICompress candidate : readable) {
+            long start = System.nanoTime();
+            byte[] compressed;
+            try {
+                compressed = candidate.compress(data);
+            } catch (IOException e) {
+                continue;
+            }
+            long nanos = Math.max(1, System.nanoTime() - start);
+            if (nanos < fastestNanos) {
+                fastest = candidate;
+                fastestSize = compressed.length;
+                fastestNanos = nanos;
+            }
+            double throughput = data.length / (nanos / 1e9) / (1024 * 1024);
+            if (throughput >= minThroughput && compressed.length < bestSize) {
+                best = candidate;
+                bestSize = compressed.length;
+            }
+        }
+        if (best == null) {
+            best = fastest;
+            bestSize = fastestSize;
+        }
+        return best != null && bestSize <= data.length * maxRatio ? best : null;
+    }
+
+    @Override
+    public InputStream createDecompressStream(InputStream is) throws IOException {
+        int header = is.read();
+        if (header == RAW) return is;
+        if (header == COMPRESSED) return CompressDetector.createDecompressStream(is);
+        if (header < 0) throw new EOFException("Unexpected end of adaptive stream");
+        throw new IOException("Not an adaptive stream");
+    }
+
+    @Override
+    public OutputStream createCompressStream(OutputStream os) {
+        return new SamplingOutputStream(os);
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".acz";
+    }
+
+    /**
+     * Compresses a small sample once with every candidate and keeps those that are available and whose output
+     * {@link CompressDetector} reads back, so that class loading, native library initialization and the
+     * round trip do not count against the measured samples. Concurrent first calls may both do the work.
+     */
+    private List<ICompress> warmUp() {
+        List<ICompress> result = readable;
+        if (result != null) return result;
+        byte[] data = new byte[256];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) ('a' + i % 7 * i % 26);
+        List<ICompress> list = new ArrayList<>(candidates.size());
+        for (ICompress candidate : candidates) {
+            try {
+                if (Arrays.equals(CompressDetector.decompress(candidate.compress(data)), data)) list.add(candidate);
+            } catch (IOException ignored) {
+                // unavailable or unrecognized candidates are never chosen
+            }
+        }
+        return readable = List.copyOf(list);
+    }
+
+    private final class SamplingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private byte[] sample = new byte[sampleSize];
+        private int count;
+        private OutputStream target;
+        private boolean closed;
+
+        SamplingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            if (target != null) {
+                target.write(b);
+                return;
+            }
+            sample[count++] = (byte) b;
+            if (count == sample.length) choose();
+        }
+
+        @Override
+        public void write(byte @NotNull [] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            ensureOpen();
+            if (target == null) {
+                int n = Math.min(len, sample.length - count);
+                System.arraycopy(b, off, sample, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                if (count == sample.length) choose();
+            }
+            if (len > 0) target.write(b, off, len);
+        }
+
+        /**
+         * Flushes the underlying stream. Data buffered for the sample is only written once the codec is chosen.
+         */
+        @Override
+        public void flush() throws IOException {
+            ensureOpen();
+            if (target != null) target.flush();
+            else out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                if (target == null) choose();
+            } finally {
+                (target != null ? target : out).close();
+            }
+        }
+
+        private void choose() throws IOException {
+            ICompress codec = AdaptiveCompress.this.choose(sample, 0, count);
+            out.write(codec == null ? RAW : COMPRESSED);
+            target = codec == null ? out : codec.createCompressStream(out);
+            target.write(sample, 0, count);
+            sample = null;
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Configures an {@link AdaptiveCompress} codec.
+     */
+    public static final class Builder {
+        private final List<ICompress> candidates = new ArrayList<>();
+        private int sampleSize = DEFAULT_SAMPLE_SIZE;
+        private double minThroughput = 50;
+        private double maxRatio = 0.9;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a candidate codec. Its output must be recognized by {@link CompressDetector}.
+         * Without explicit candidates, zstd at level 3, framed brotli at quality 5, LZ4 and deflate are used.
+         *
+         * @param codec the candidate
+         * @return this builder
+         */
+        public Builder candidate(@NotNull ICompress codec) {
+            Validate.notNull(codec, "Codec must not be null");
+            candidates.add(codec);
+            return this;
+        }
+
+        /**
+         * Sets how many leading bytes of each stream are sampled.
+         *
+         * @param sampleSize the sample size in bytes
+         * @return this builder
+         */
+        public Builder sampleSize(@Range(from = 1, to = Integer.MAX_VALUE) int sampleSize) {
+            if (sampleSize < 1) throw new IllegalArgumentException("sampleSize must be positive");
+            this.sampleSize = sampleSize;
+            return this;
+        }
+
+        /**
+         * Sets the CPU budget as the minimum compression throughput, in MiB per second on one core,
+         * a candidate must reach on the sample; the default is 50.
+         *
+         * @param minThroughput the minimum throughput in MiB/s
+         * @return this builder
+         */
+        public Builder minThroughput(double minThroughput) {
+            if (!(minThroughput >= 0)) throw new IllegalArgumentException("minThroughput must not be negative");
+            this.minThroughput = minThroughput;
+            return this;
+        }
+
+        /**
+         * Sets the largest compressed-to-raw size ratio worth keeping; data that does not compress below it is
+         * stored raw. The default of 0.9 requires a saving of at least 10%.
+         *
+         * @param maxRatio the ratio, between 0 and 1
+         * @return this builder
+         */
+        public Builder maxRatio(double maxRatio) {
+            if (!(maxRatio > 0 && maxRatio <= 1)) throw new IllegalArgumentException("maxRatio must be in (0, 1]");
+            this.maxRatio = maxRatio;
+            return this;
+        }
+
+        /**
+         * Creates the codec.
+         *
+         * @return the configured codec
+         */
+        public ICompress build() {
+            return new AdaptiveCompress(this);
+        }
+    }
+}
@@ -3,35 +3,101 @@ package one.pkg.tiny.utils.compress;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
+/**
+ * The zlib and gzip codecs of the JDK.
+ * <p>
+ * The {@link Deflater} and {@link Inflater} behind every stream and buffer operation are borrowed from
+ * {@link ZlibPool#getDefault()} and returned when the stream is closed or the operation completes, so that
+ * native zlib state is reused instead of being allocated per call.
+ */
 public enum BaseCompress implements ICompress {
     DEFLATE(".deflate") {
         @Override
         public InputStream createDecompressStream(InputStream is) {
-            return new InflaterInputStream(is);
+            ZlibPool pool = ZlibPool.getDefault();
+            return new Zlib.PooledInflaterInputStream(is, pool, pool.acquireInflater(false), STREAM_BUFFER_SIZE);
         }
 
         @Override
         public OutputStream createCompressStream(OutputStream os) {
-            return new DeflaterOutputStream(os);
+            ZlibPool pool = ZlibPool.getDefault();
+            return new Zlib.PooledDeflaterOutputStream(os, pool, pool.acquireDeflater(Deflater.DEFAULT_COMPRESSION, false), STREAM_BUFFER_SIZE);
+        }
+
+        @Override
+        public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+            ZlibPool pool = ZlibPool.getDefault();
+            Deflater deflater = pool.acquireDeflater(Deflater.DEFAULT_COMPRESSION, false);
+            try {
+                return Zlib.deflate(deflater, src, dst);
+            } finally {
+                pool.release(deflater);
+            }
+        }
+
+        @Override
+        public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+            ZlibPool pool = ZlibPool.getDefault();
+            Inflater inflater = pool.acquireInflater(false);
+            try {
+                return Zlib.inflate(inflater, src, dst);
+            } finally {
+                pool.release(inflater);
+            }
         }
     },
     GZIP(".gz") {
         @Override
         public InputStream createDecompressStream(InputStream is) throws IOException {
-            return new GZIPInputStream(is);
+            ZlibPool pool = ZlibPool.getDefault();
+            return new Zlib.GzipInputStream(is, pool, pool.acquireInflater(true), STREAM_BUFFER_SIZE);
         }
 
         @Override
         public OutputStream createCompressStream(OutputStream os) throws IOException {
-            return new GZIPOutputStream(os);
+            ZlibPool pool = ZlibPool.getDefault();
+            Deflater deflater = pool.acquireDeflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                return new Zlib.GzipOutputStream(os, pool, deflater, STREAM_BUFFER_SIZE);
+            } catch (IOException e) {
+                pool.release(deflater);
+                throw e;
+            }
+        }
+
+        @Override
+        public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+            ZlibPool pool = ZlibPool.getDefault();
+            Deflater deflater = pool.acquireDeflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                return Zlib.gzip(deflater, src, dst);
+            } finally {
+                pool.release(deflater);
+            }
+        }
+
+        @Override
+        public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+            ZlibPool pool = ZlibPool.getDefault();
+            Inflater inflater = pool.acquireInflater(true);
+            try {
+                return Zlib.gunzip(inflater, src, dst);
+            } finally {
+                pool.release(inflater);
+            }
         }
     };
 
+    /**
+     * The size of the internal buffer of the zlib streams; the JDK default of 512 bytes
+     * causes one native call per half kilobyte.
+     */
+    static final int STREAM_BUFFER_SIZE = 8192;
+
     final String fileExtension;
 
     BaseCompress(String fileExtension) {
@@ -0,0 +1,318 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compresses many small records at once, so that stream setup, headers and trailers are not paid per record.
+ * <p>
+ * The framed methods and {@link RecordWriter} write all records into one compressed stream, each preceded by
+ * its length as an unsigned LEB128 varint; records share the codec context and its window, so repeated content
+ * across records compresses as well. The stream is read back with {@link #decompressFramed(ICompress, byte[])}
+ * or {@link RecordReader}. The {@code compressEach} and {@code decompressEach} methods instead produce one
+ * independent output per record, for records that must be stored or sent separately; they use the
+ * one-shot methods of the codec, which reuse its native context across the batch.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * byte[] batch = BatchCompress.compressFramed(ZstdCompress.getInstance(), events);
+ * List<byte[]> restored = BatchCompress.decompressFramed(ZstdCompress.getInstance(), batch);
+ * }</pre>
+ */
+public final class BatchCompress {
+    private static final int MAX_LENGTH_BYTES = 5;
+
+    private BatchCompress() {
+    }
+
+    /**
+     * Compresses records into one framed stream.
+     *
+     * @param codec   the codec
+     * @param records the records
+     * @return the compressed stream
+     * @throws IOException if compression fails
+     */
+    public static byte[] compressFramed(@NotNull ICompress codec, @NotNull Iterable<byte[]> records) throws IOException {
+        Validate.notNull(records, "Records must not be null");
+        return compressFramed(codec, records.iterator());
+    }
+
+    /**
+     * Compresses the records of an iterator into one framed stream.
+     *
+     * @param codec   the codec
+     * @param records the records
+     * @return the compressed stream
+     * @throws IOException if compression fails
+     */
+    public static byte[] compressFramed(@NotNull ICompress codec, @NotNull Iterator<byte[]> records) throws IOException {
+        Validate.notNull(records, "Records must not be null");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (RecordWriter writer = newWriter(codec, out)) {
+            while (records.hasNext()) writer.write(records.next());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decompresses all records of a framed stream.
+     *
+     * @param codec the codec the stream was written with
+     * @param data  the compressed stream
+     * @return the records in order
+     * @throws IOException if the data is corrupt
+     */
+    public static List<byte[]> decompressFramed(@NotNull ICompress codec, byte @NotNull [] data) throws IOException {
+        Validate.notNull(data, "Data must not be null");
+        List<byte[]> records = new ArrayList<>();
+        try (RecordReader reader = newReader(codec, new ByteArrayInputStream(data))) {
+            byte[] record;
+            while ((record = reader.read()) != null) records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * Opens a writer of a framed stream.
+     *
+     * @param codec the codec
+     * @param os    the destination of the compressed stream; closed with the writer
+     * @return the writer
+     * @throws IOException if the compressed stream cannot be created
+     */
+    public static RecordWriter newWriter(@NotNull ICompress codec, @NotNull OutputStream os) throws IOException {
+        Validate.notNull(codec, "Codec must not be null");
+        Validate.notNull(os, "Output stream must not be null");
+        return new RecordWriter(new BufferedOutputStream(codec.createCompressStream(os), codec.getBufferSize()));
+    }
+
+    /**
+     * Opens a reader of a framed stream.
+     *
+     * @param codec the codec the stream was written with
+     * @param is    the compressed stream; closed with the reader
+     * @return the reader
+     * @throws IOException if the stream cannot be read
+     */
+    public static RecordReader newReader(@NotNull ICompress codec, @NotNull InputStream is) throws IOException {
+        Validate.notNull(codec, "Codec must not be null");
+        Validate.notNull(is, "Input stream must not be null");
+        return new RecordReader(new BufferedInputStream(codec.createDecompressStream(is), codec.getBufferSize()));
+    }
+
+    /**
+     * Compresses every record on its own.
+     *
+     * @param codec   the codec
+     * @param records the records
+     * @return the compressed records in order
+     * @throws IOException if compression fails
+     */
+    public static List<byte[]> compressEach(@NotNull ICompress codec, @NotNull Iterable<byte[]> records) throws IOException {
+        Validate.notNull(codec, "Codec must not be null");
+        Validate.notNull(records, "Records must not be null");
+        List<byte[]> compressed = new ArrayList<>();
+        for (byte[] record : records) compressed.add(codec.compress(record));
+        return compressed;
+    }
+
+    /**
+     * Decompresses every record on its own.
+     *
+     * @param codec   the codec the records were compressed with
+     * @param records the compressed records
+     * @return the records in order
+     * @throws IOException if a record is corrupt
+     */
+    public static List<byte[]> decompressEach(@NotNull ICompress codec, @NotNull Iterable<byte[]> records) throws IOException {
+        Validate.notNull(codec, "Codec must not be null");
+        Validate.notNull(records, "Records must not be null");
+        List<byte[]> decompressed = new ArrayList<>();
+        for (byte[] record : records) decompressed.add(codec.decompress(record));
+        return decompressed;
+    }
+
+    /**
+     * Compresses the remaining bytes of every buffer on its own, back to back into {@code dst}, see
+     * {@link ICompress#compress(ByteBuffer, ByteBuffer)}.
+     *
+     * @param codec   the codec
+     * @param records the records; their positions are advanced to their limits
+     * @param dst     the buffer receiving the compressed records
+     * @return the compressed size of every record, in order
+     * @throws IOException if {@code dst} is too small or compression fails
+     */
+    public static int[] compressEach(@NotNull ICompress codec, @NotNull List<ByteBuffer> records, @NotNull ByteBuffer dst) throws IOException {
+        Validate.notNull(codec, "Codec must not be null");
+        Validate.notNull(records, "Records must not be null");
+        Validate.notNull(dst, "Destination must not be null");
+        int[] sizes = new int[records.size()];
+        for (int i = 0; i < sizes.length; i++) sizes[i] = codec.compress(records.get(i), dst);
+        return sizes;
+    }
+
+    /**
+     * Decompresses every buffer on its own, back to back into {@code dst}, see
+     * {@link ICompress#decompress(ByteBuffer, ByteBuffer)}.
+     *
+     * @param codec   the codec the records were compressed with
+     * @param records the compressed records; their positions are advanced past the consumed bytes
+     * @param dst     the buffer receiving the decompressed records
+     * @return the decompressed size of every record, in order
+     * @throws IOException if {@code dst} is too small or a record is corrupt
+     */
+    public static int[] decompressEach(@NotNull ICompress codec, @NotNull List<ByteBuffer> records, @NotNull ByteBuffer dst) throws IOException {
+        Validate.notNull(codec, "Codec must not be null");
+        Validate.notNull(records, "Records must not be null");
+        Validate.notNull(dst, "Destination must not be null");
+        int[] sizes = new int[records.size()];
+        for (int i = 0; i < sizes.length; i++) sizes[i] = codec.decompress(records.get(i), dst);
+        return sizes;
+    }
+
+    /**
+     * Writes length-prefixed records into one compressed stream. Not thread-safe.
+     */
+    public static final class RecordWriter implements Closeable, Flushable {
+        private final OutputStream out;
+        private final byte[] length = new byte[MAX_LENGTH_BYTES];
+        private long count;
+
+        private RecordWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Writes a record.
+         *
+         * @param record the record
+         * @throws IOException if an I/O error occurs
+         */
+        public void write(byte @NotNull [] record) throws IOException {
+            write(record, 0, record.length);
+        }
+
+        /**
+         * Writes a record.
+         *
+         * @param b   the array holding the record
+         * @param off the start offset of the record
+         * @param len the length of the record
+         * @throws IOException if an I/O error occurs
+         */
+        public void write(byte @NotNull [] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            writeLength(len);
+            out.write(b, off, len);
+            count++;
+        }
+
+        /**
+         * Writes the remaining bytes of a buffer as a record, advancing its position to its limit.
+         *
+         * @param record the record
+         * @throws IOException if an I/O error occurs
+         */
+        public void write(@NotNull ByteBuffer record) throws IOException {
+            writeLength(record.remaining());
+            if (record.hasArray()) {
+                out.write(record.array(), record.arrayOffset() + record.position(), record.remaining());
+                record.position(record.limit());
+            } else {
+                ICompress.copyStream(new ByteBuffers.In(record), out);
+            }
+            count++;
+        }
+
+        /**
+         * Returns the number of records written so far.
+         *
+         * @return the record count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Flushes the buffered records into the compressed stream and flushes it; how much of the data becomes
+         * readable depends on the codec's flush support.
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private void writeLength(int value) throws IOException {
+            int n = 0;
+            while ((value & ~0x7F) != 0) {
+                length[n++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            length[n++] = (byte) value;
+            out.write(length, 0, n);
+        }
+    }
+
+    /**
+     * Reads the records of a stream written by {@link RecordWriter}. Not thread-safe.
+     */
+    public static final class RecordReader implements Closeable {
+        private final InputStream in;
+
+        private RecordReader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Reads the next record.
+         *
+         * @return the record, or {@code null} at the end of the stream
+         * @throws IOException if the data is corrupt or truncated
+         */
+        public byte @Nullable [] read() throws IOException {
+            int b = in.read();
+            if (b < 0) return null;
+            int length = b & 0x7F;
+            for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+                if (shift == 7 * MAX_LENGTH_BYTES) throw new IOException("Malformed record length");
+                b = in.read();
+                if (b < 0) throw new EOFException("Unexpected end of record stream");
+                length |= (b & 0x7F) << shift;
+            }
+            if (length < 0) throw new IOException("Malformed record length");
+            byte[] record = in.readNBytes(length);
+            if (record.length != length) throw new EOFException("Unexpected end of record stream");
+            return record;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
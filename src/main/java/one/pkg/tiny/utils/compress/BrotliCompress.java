@@ -1,41 +1,333 @@
 package one.pkg.tiny.utils.compress;
 
 import one.pkg.tiny.utils.Reflect;
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+/**
+ * Brotli compression backed by {@code brotli4j}.
+ * <p>
+ * {@link #getInstance()} uses the encoder defaults (quality 11, 4 MiB window);
+ * {@link #builder()} configures quality, window and mode.
+ * <p>
+ * Plain brotli streams have no magic number and cannot be told apart from other data. Codecs built with
+ * {@link Builder#framed(boolean)} prefix every stream with the four bytes {@code CE B2 CF 81}, which lets
+ * {@link CompressDetector} recognize them; such streams are not readable by plain brotli decoders.
+ */
 public class BrotliCompress implements ICompress {
-    private static final ICompress INSTANCE = new BrotliCompress();
+    /**
+     * The marker written in front of framed streams, the magic number of the brotli framing format draft.
+     */
+    static final byte[] FRAME_MAGIC = {(byte) 0xCE, (byte) 0xB2, (byte) 0xCF, (byte) 0x81};
+    private static final ICompress INSTANCE = builder().build();
     private final boolean hasDependency = Reflect.hasClass("com.aayushatharva.brotli4j.decoder.BrotliInputStream");
+    private final int quality;
+    private final int windowLog;
+    private final @Nullable Mode mode;
+    private final boolean framed;
 
-    private BrotliCompress() {
+    private BrotliCompress(Builder builder) {
+        this.quality = builder.quality;
+        this.windowLog = builder.windowLog;
+        this.mode = builder.mode;
+        this.framed = builder.framed;
     }
 
     public static ICompress getInstance() {
         return INSTANCE;
     }
 
+    /**
+     * Returns a builder for a configured codec.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
     protected void checkDependencyPresent(String operation) throws IOException {
         if (!hasDependency)
             throw new IOException(operation + " requires the 'com.aayushatharva.brotli4j:brotli4j' library to be present on the classpath");
+        if (!Native.AVAILABLE)
+            throw new IOException(operation + " requires the brotli4j native library for this platform", Native.CAUSE);
     }
 
     @Override
     public InputStream createDecompressStream(InputStream is) throws IOException {
         checkDependencyPresent("BROTLI decompression");
-        return new com.aayushatharva.brotli4j.decoder.BrotliInputStream(is);
+        if (framed) checkFrameMagic(is.readNBytes(FRAME_MAGIC.length));
+        return Native.createDecompressStream(is);
     }
 
     @Override
     public OutputStream createCompressStream(OutputStream os) throws IOException {
         checkDependencyPresent("BROTLI compression");
-        return new com.aayushatharva.brotli4j.encoder.BrotliOutputStream(os);
+        if (framed) os.write(FRAME_MAGIC);
+        return Native.createCompressStream(os, this);
+    }
+
+    private static void checkFrameMagic(byte[] magic) throws IOException {
+        if (!Arrays.equals(magic, FRAME_MAGIC)) throw new IOException("Not a framed BROTLI stream");
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The data is handed to the native encoder through its own direct input buffer and the output is
+     * copied straight from the encoder's direct output buffers into {@code dst}, without heap arrays.
+     */
+    @Override
+    public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        checkDependencyPresent("BROTLI compression");
+        int start = dst.position();
+        int length = src.remaining();
+        if (framed) {
+            if (dst.remaining() < FRAME_MAGIC.length) throw ByteBuffers.overflow();
+            dst.put(FRAME_MAGIC);
+        }
+        if (length == 0) {
+            // The encoder cannot be created with an empty input buffer; this is the canonical empty stream.
+            if (!dst.hasRemaining()) throw ByteBuffers.overflow();
+            dst.put((byte) 6);
+            return dst.position() - start;
+        }
+        Native.compress(this, src, dst);
+        return dst.position() - start;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The data is handed to the native decoder through its own direct input buffer and the output is
+     * copied straight from the decoder's direct output buffers into {@code dst}, without heap arrays.
+     */
+    @Override
+    public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        checkDependencyPresent("BROTLI decompression");
+        int start = dst.position();
+        if (framed) {
+            byte[] magic = new byte[Math.min(FRAME_MAGIC.length, src.remaining())];
+            src.get(magic);
+            checkFrameMagic(magic);
+        }
+        Native.decompress(src, dst);
+        return dst.position() - start;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Brotli benefits from large input chunks because of its large window.
+     */
+    @Override
+    public int getBufferSize() {
+        return 256 * 1024;
     }
 
     @Override
     public String getFileExtension() {
         return ".zst";
     }
+
+    /**
+     * Loads the brotli4j native library on first use and holds every use of brotli4j, so that the outer class
+     * can be loaded, and its dependency check run, without brotli4j on the classpath. Only initialized after
+     * the dependency check passed.
+     */
+    private static final class Native {
+        static final boolean AVAILABLE;
+        static final Throwable CAUSE;
+
+        static {
+            boolean available;
+            Throwable cause = null;
+            try {
+                com.aayushatharva.brotli4j.Brotli4jLoader.ensureAvailability();
+                available = true;
+            } catch (Throwable e) {
+                available = false;
+                cause = e;
+            }
+            AVAILABLE = available;
+            CAUSE = cause;
+        }
+
+        static InputStream createDecompressStream(InputStream is) throws IOException {
+            return new com.aayushatharva.brotli4j.decoder.BrotliInputStream(is);
+        }
+
+        static OutputStream createCompressStream(OutputStream os, BrotliCompress codec) throws IOException {
+            return new com.aayushatharva.brotli4j.encoder.BrotliOutputStream(os, parameters(codec));
+        }
+
+        static com.aayushatharva.brotli4j.encoder.Encoder.Parameters parameters(BrotliCompress codec) {
+            com.aayushatharva.brotli4j.encoder.Encoder.Parameters parameters = new com.aayushatharva.brotli4j.encoder.Encoder.Parameters();
+            if (codec.quality >= 0) parameters.setQuality(codec.quality);
+            if (codec.windowLog != 0) parameters.setWindow(codec.windowLog);
+            if (codec.mode != null) parameters.setMode(com.aayushatharva.brotli4j.encoder.Encoder.Mode.valueOf(codec.mode.name()));
+            return parameters;
+        }
+
+        /**
+         * Compresses the remaining, non-empty bytes of {@code src} into {@code dst}.
+         */
+        static void compress(BrotliCompress codec, ByteBuffer src, ByteBuffer dst) throws IOException {
+            int length = src.remaining();
+            com.aayushatharva.brotli4j.encoder.Encoder.Parameters parameters = parameters(codec);
+            com.aayushatharva.brotli4j.encoder.EncoderJNI.Wrapper encoder = new com.aayushatharva.brotli4j.encoder.EncoderJNI.Wrapper(
+                    length, parameters.quality(), parameters.lgwin(), parameters.mode());
+            try {
+                encoder.getInputBuffer().put(src);
+                encoder.push(com.aayushatharva.brotli4j.encoder.EncoderJNI.Operation.FINISH, length);
+                while (true) {
+                    if (!encoder.isSuccess()) throw new IOException("BROTLI compression failed");
+                    if (encoder.hasMoreOutput()) {
+                        ByteBuffer output = encoder.pull();
+                        if (output.remaining() > dst.remaining()) throw ByteBuffers.overflow();
+                        dst.put(output);
+                    } else if (!encoder.isFinished()) {
+                        encoder.push(com.aayushatharva.brotli4j.encoder.EncoderJNI.Operation.FINISH, 0);
+                    } else {
+                        return;
+                    }
+                }
+            } finally {
+                encoder.destroy();
+            }
+        }
+
+        /**
+         * Decompresses the remaining bytes of {@code src} into {@code dst}.
+         */
+        static void decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+            int length = src.remaining();
+            com.aayushatharva.brotli4j.decoder.DecoderJNI.Wrapper decoder = new com.aayushatharva.brotli4j.decoder.DecoderJNI.Wrapper(Math.max(length, 1));
+            try {
+                decoder.getInputBuffer().put(src);
+                decoder.push(length);
+                while (true) {
+                    switch (decoder.getStatus()) {
+                        case DONE:
+                            return;
+                        case OK:
+                            decoder.push(0);
+                            break;
+                        case NEEDS_MORE_OUTPUT:
+                            ByteBuffer output = decoder.pull();
+                            if (output.remaining() > dst.remaining()) throw ByteBuffers.overflow();
+                            dst.put(output);
+                            break;
+                        case NEEDS_MORE_INPUT:
+                            decoder.push(0);
+                            if (decoder.getStatus() == com.aayushatharva.brotli4j.decoder.DecoderJNI.Status.NEEDS_MORE_INPUT)
+                                throw new EOFException("Unexpected end of BROTLI stream");
+                            break;
+                        default:
+                            throw new IOException("BROTLI decompression failed: corrupt input");
+                    }
+                }
+            } finally {
+                decoder.destroy();
+            }
+        }
+    }
+
+    /**
+     * The kind of input the encoder is tuned for.
+     */
+    public enum Mode {
+        /**
+         * No assumptions about the input.
+         */
+        GENERIC,
+        /**
+         * UTF-8 text.
+         */
+        TEXT,
+        /**
+         * WOFF 2.0 fonts.
+         */
+        FONT
+    }
+
+    /**
+     * Configures a {@link BrotliCompress} codec. Settings left untouched keep the encoder defaults.
+     */
+    public static final class Builder {
+        private int quality = -1;
+        private int windowLog;
+        private @Nullable Mode mode;
+        private boolean framed;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the quality. Levels up to 4 are fast enough for live traffic, 11 is the slow default
+         * meant for static content.
+         *
+         * @param quality the quality, from 0 to 11
+         * @return this builder
+         */
+        public Builder quality(@Range(from = 0, to = 11) int quality) {
+            if (quality < 0 || quality > 11) throw new IllegalArgumentException("quality must be between 0 and 11");
+            this.quality = quality;
+            return this;
+        }
+
+        /**
+         * Sets the base-2 logarithm of the sliding window (lgwin); the default is 22, i.e. 4 MiB.
+         *
+         * @param windowLog the window log, from 10 to 24
+         * @return this builder
+         */
+        public Builder windowLog(@Range(from = 10, to = 24) int windowLog) {
+            if (windowLog < 10 || windowLog > 24) throw new IllegalArgumentException("windowLog must be between 10 and 24");
+            this.windowLog = windowLog;
+            return this;
+        }
+
+        /**
+         * Tunes the encoder for a kind of input.
+         *
+         * @param mode the mode
+         * @return this builder
+         */
+        public Builder mode(@NotNull Mode mode) {
+            Validate.notNull(mode, "Mode must not be null");
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * Prefixes every stream with the frame marker {@code CE B2 CF 81} so that {@link CompressDetector}
+         * can recognize it. Framed streams must be read by a framed codec or through the detector.
+         *
+         * @param framed whether to write the frame marker
+         * @return this builder
+         */
+        public Builder framed(boolean framed) {
+            this.framed = framed;
+            return this;
+        }
+
+        /**
+         * Creates the codec.
+         *
+         * @return the configured codec
+         */
+        public ICompress build() {
+            return new BrotliCompress(this);
+        }
+    }
 }
@@ -0,0 +1,83 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.IdleQueue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Range;
+
+/**
+ * A lock-free pool of equally sized byte arrays used as copy buffers by {@link ICompress}.
+ * <p>
+ * Borrowed arrays must be handed back with {@link #release(byte[])}; at most {@code maxIdle} idle arrays are
+ * retained in an {@link IdleQueue}, any surplus is left to the garbage collector. {@link #of(int)} shares pools
+ * for the power-of-two sizes from 64 KiB to 4 MiB, which covers the buffer and block sizes of the codecs in
+ * this package; other sizes get a pool that retains nothing, so arbitrary sizes do not pin memory.
+ */
+public final class BufferPool {
+    private static final int MIN_SHARED_LOG = 16;
+    private static final int MAX_SHARED_LOG = 22;
+    private static final BufferPool[] SHARED = new BufferPool[MAX_SHARED_LOG - MIN_SHARED_LOG + 1];
+
+    static {
+        for (int i = 0; i < SHARED.length; i++)
+            SHARED[i] = new BufferPool(1 << (MIN_SHARED_LOG + i), Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    private final int bufferSize;
+    private final IdleQueue<byte[]> idle;
+
+    /**
+     * Creates a pool.
+     *
+     * @param bufferSize the size of the pooled arrays
+     * @param maxIdle    the maximum number of idle arrays retained
+     */
+    public BufferPool(@Range(from = 1, to = Integer.MAX_VALUE) int bufferSize,
+                      @Range(from = 0, to = Integer.MAX_VALUE) int maxIdle) {
+        if (bufferSize < 1) throw new IllegalArgumentException("bufferSize must be positive");
+        if (maxIdle < 0) throw new IllegalArgumentException("maxIdle must not be negative");
+        this.bufferSize = bufferSize;
+        this.idle = new IdleQueue<>(maxIdle);
+    }
+
+    /**
+     * Returns the shared pool for the given buffer size, retaining up to twice the number of available
+     * processors idle arrays, or a pool retaining none if arrays of this size are not shared.
+     *
+     * @param bufferSize the size of the pooled arrays
+     * @return the pool
+     */
+    public static BufferPool of(@Range(from = 1, to = Integer.MAX_VALUE) int bufferSize) {
+        int log = 31 - Integer.numberOfLeadingZeros(bufferSize);
+        if (bufferSize == 1 << log && log >= MIN_SHARED_LOG && log <= MAX_SHARED_LOG) return SHARED[log - MIN_SHARED_LOG];
+        return new BufferPool(bufferSize, 0);
+    }
+
+    /**
+     * Returns the size of the arrays handed out by this pool.
+     *
+     * @return the buffer size
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Takes an idle array from the pool, or allocates a new one if none is available.
+     * The content of the returned array is undefined.
+     *
+     * @return an array of {@link #getBufferSize()} bytes
+     */
+    public byte[] acquire() {
+        byte[] buffer = idle.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    /**
+     * Returns an array to the pool. Arrays of a different size are ignored.
+     *
+     * @param buffer an array previously obtained from {@link #acquire()}
+     */
+    public void release(byte @NotNull [] buffer) {
+        if (buffer.length == bufferSize) idle.offer(buffer);
+    }
+}
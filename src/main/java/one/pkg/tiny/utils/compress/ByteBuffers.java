@@ -0,0 +1,101 @@
+package one.pkg.tiny.utils.compress;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Stream views over {@link ByteBuffer}s used by the buffer-based {@link ICompress} methods.
+ */
+final class ByteBuffers {
+    /**
+     * Output arrays are sized from a content size declared in a frame header only up to this many times the
+     * compressed size plus {@link #DECLARED_SIZE_SLACK}; larger declarations, forged or not, are streamed
+     * instead, so that a few forged header bytes cannot allocate gigabytes.
+     */
+    private static final long DECLARED_SIZE_RATIO = 32;
+    private static final long DECLARED_SIZE_SLACK = 32 * 1024 * 1024;
+    private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private ByteBuffers() {
+    }
+
+    /**
+     * Returns whether an output array may be allocated up front for the content size declared by the
+     * headers of {@code compressedSize} bytes of compressed data.
+     */
+    static boolean isPlausibleContentSize(long contentSize, long compressedSize) {
+        return contentSize >= 0 && contentSize <= Math.min(MAX_ARRAY_SIZE, compressedSize * DECLARED_SIZE_RATIO + DECLARED_SIZE_SLACK);
+    }
+
+    static IOException overflow() {
+        return new IOException("Destination buffer is too small");
+    }
+
+    /**
+     * Reads the remaining bytes of a buffer, advancing its position.
+     */
+    static final class In extends InputStream {
+        private final ByteBuffer buffer;
+
+        In(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Writes into a buffer, advancing its position; fails with an {@link IOException} once it is full.
+     */
+    static final class Out extends OutputStream {
+        private final ByteBuffer buffer;
+
+        Out(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) throw overflow();
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte @NotNull [] b, int off, int len) throws IOException {
+            try {
+                buffer.put(b, off, len);
+            } catch (BufferOverflowException e) {
+                throw overflow();
+            }
+        }
+    }
+}
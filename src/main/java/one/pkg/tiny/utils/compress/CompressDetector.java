@@ -0,0 +1,140 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Recognizes compressed data by its leading magic bytes and decompresses it with the matching codec,
+ * without trial decoding.
+ * <p>
+ * Recognized formats:
+ * <ul>
+ *     <li>gzip, {@code 1F 8B}, decoded by {@link BaseCompress#GZIP}</li>
+ *     <li>zstd frames {@code 28 B5 2F FD} and skippable frames {@code 5? 2A 4D 18}, decoded by {@link ZstdCompress}</li>
+ *     <li>framed brotli, {@code CE B2 CF 81}, as written by {@link BrotliCompress.Builder#framed(boolean)}</li>
+ *     <li>LZ4 frames, {@code 04 22 4D 18}, decoded by {@link Lz4Compress}</li>
+ *     <li>zlib, a deflate header whose first two bytes are a multiple of 31, decoded by {@link BaseCompress#DEFLATE}</li>
+ * </ul>
+ * Plain brotli streams carry no magic number and are not recognized. Codecs configured with a dictionary
+ * cannot be recognized either, since the dictionary is not part of the stream.
+ */
+public final class CompressDetector {
+    /**
+     * The number of leading bytes the detection looks at.
+     */
+    public static final int HEADER_SIZE = 4;
+    private static final ICompress FRAMED_BROTLI = BrotliCompress.builder().framed(true).build();
+
+    private CompressDetector() {
+    }
+
+    /**
+     * Detects the codec of the data starting with the given bytes.
+     *
+     * @param header the leading bytes of the data; {@link #HEADER_SIZE} bytes suffice
+     * @return the codec, or {@code null} if the format is not recognized
+     */
+    public static @Nullable ICompress detect(byte @NotNull [] header) {
+        Validate.notNull(header, "Header must not be null");
+        return detect(header, header.length);
+    }
+
+    /**
+     * Detects the codec of the remaining bytes of a buffer without changing its position.
+     *
+     * @param data the data
+     * @return the codec, or {@code null} if the format is not recognized
+     */
+    public static @Nullable ICompress detect(@NotNull ByteBuffer data) {
+        Validate.notNull(data, "Data must not be null");
+        byte[] header = new byte[Math.min(HEADER_SIZE, data.remaining())];
+        data.get(data.position(), header);
+        return detect(header, header.length);
+    }
+
+    /**
+     * Wraps a stream of compressed data of any recognized format in a decompressing stream.
+     *
+     * @param is the compressed data
+     * @return the decompressing stream
+     * @throws IOException if the format is not recognized or the stream cannot be read
+     */
+    public static InputStream createDecompressStream(@NotNull InputStream is) throws IOException {
+        Validate.notNull(is, "Input stream must not be null");
+        PushbackInputStream in = new PushbackInputStream(is, HEADER_SIZE);
+        byte[] header = new byte[HEADER_SIZE];
+        int n = in.readNBytes(header, 0, HEADER_SIZE);
+        in.unread(header, 0, n);
+        return require(detect(header, n)).createDecompressStream(in);
+    }
+
+    /**
+     * Decompresses a stream of any recognized format.
+     *
+     * @param is the compressed data
+     * @param os the destination of the decompressed data
+     * @throws IOException if the format is not recognized or the data is corrupt
+     */
+    public static void decompress(@NotNull InputStream is, @NotNull OutputStream os) throws IOException {
+        Validate.notNull(os, "Output stream must not be null");
+        try (InputStream decompressStream = createDecompressStream(is)) {
+            ICompress.copyStream(decompressStream, os);
+        }
+    }
+
+    /**
+     * Decompresses a complete message of any recognized format.
+     *
+     * @param data the compressed data
+     * @return the decompressed data
+     * @throws IOException if the format is not recognized or the data is corrupt
+     */
+    public static byte[] decompress(byte @NotNull [] data) throws IOException {
+        return require(detect(data)).decompress(data);
+    }
+
+    /**
+     * Decompresses the remaining bytes of {@code src} of any recognized format into {@code dst}, see
+     * {@link ICompress#decompress(ByteBuffer, ByteBuffer)}.
+     *
+     * @param src the compressed data
+     * @param dst the buffer receiving the decompressed data
+     * @return the number of bytes written to {@code dst}
+     * @throws IOException if the format is not recognized, {@code dst} is too small or the data is corrupt
+     */
+    public static int decompress(@NotNull ByteBuffer src, @NotNull ByteBuffer dst) throws IOException {
+        return require(detect(src)).decompress(src, dst);
+    }
+
+    private static @Nullable ICompress detect(byte[] header, int length) {
+        if (length < 2) return null;
+        int b0 = header[0] & 0xFF;
+        int b1 = header[1] & 0xFF;
+        if (b0 == 0x1F && b1 == 0x8B) return BaseCompress.GZIP;
+        if (length >= 4) {
+            int b2 = header[2] & 0xFF;
+            int b3 = header[3] & 0xFF;
+            if (b0 == 0x28 && b1 == 0xB5 && b2 == 0x2F && b3 == 0xFD) return ZstdCompress.getInstance();
+            if ((b0 & 0xF0) == 0x50 && b1 == 0x2A && b2 == 0x4D && b3 == 0x18) return ZstdCompress.getInstance();
+            if (b0 == 0xCE && b1 == 0xB2 && b2 == 0xCF && b3 == 0x81) return FRAMED_BROTLI;
+            if (b0 == 0x04 && b1 == 0x22 && b2 == 0x4D && b3 == 0x18) return Lz4Compress.getInstance();
+        }
+        // CM = 8 (deflate), CINFO <= 7 (window up to 32 KiB) and the FCHECK bits make the header a multiple of 31.
+        if ((b0 & 0x0F) == 8 && (b0 >>> 4) <= 7 && ((b0 << 8) | b1) % 31 == 0) return BaseCompress.DEFLATE;
+        return null;
+    }
+
+    private static ICompress require(@Nullable ICompress codec) throws IOException {
+        if (codec == null) throw new IOException("Unknown compression format");
+        return codec;
+    }
+}
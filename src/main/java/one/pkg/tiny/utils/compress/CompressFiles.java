@@ -0,0 +1,195 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.IdleQueue;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The file-to-file operations of {@link ICompress}.
+ */
+final class CompressFiles {
+    /**
+     * Sources up to this size are read into a direct buffer and compressed with a single
+     * {@link ICompress#compress(ByteBuffer, ByteBuffer)} call into a second one sized for the worst case;
+     * larger ones are streamed.
+     */
+    private static final int ONE_SHOT_LIMIT = 1024 * 1024;
+    /**
+     * Idle pairs of source and destination buffers for one-shot compression. Direct memory is only released
+     * once the garbage collector finds the buffer, so allocating a pair per file would churn it.
+     */
+    private static final IdleQueue<ByteBuffer[]> BUFFERS = new IdleQueue<>(Runtime.getRuntime().availableProcessors());
+    /**
+     * The size of the regions larger files are mapped in.
+     */
+    private static final int MAP_SIZE = 1 << 30;
+
+    private CompressFiles() {
+    }
+
+    static void compress(ICompress codec, Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = in.size();
+            replace(target, out -> {
+                if (size <= ONE_SHOT_LIMIT) {
+                    ByteBuffer[] buffers = BUFFERS.poll();
+                    if (buffers == null) {
+                        buffers = new ByteBuffer[]{ByteBuffer.allocateDirect(ONE_SHOT_LIMIT),
+                                ByteBuffer.allocateDirect(maxCompressedSize(ONE_SHOT_LIMIT))};
+                    }
+                    try {
+                        ByteBuffer src = buffers[0].clear().limit((int) size);
+                        while (src.hasRemaining() && in.read(src, src.position()) >= 0) ;
+                        src.flip();
+                        ByteBuffer dst = buffers[1].clear();
+                        boolean fits;
+                        try {
+                            codec.compress(src, dst);
+                            fits = true;
+                        } catch (IOException e) {
+                            // most likely a codec whose worst case exceeds the bound; streaming cannot overflow
+                            fits = false;
+                        }
+                        if (fits) {
+                            dst.flip();
+                            while (dst.hasRemaining()) out.write(dst);
+                        } else {
+                            src.rewind();
+                            try (OutputStream compressStream = codec.createCompressStream(Channels.newOutputStream(out))) {
+                                WritableByteChannel channel = Channels.newChannel(compressStream);
+                                while (src.hasRemaining()) channel.write(src);
+                            }
+                        }
+                    } finally {
+                        BUFFERS.offer(buffers);
+                    }
+                } else {
+                    try (OutputStream compressStream = codec.createCompressStream(Channels.newOutputStream(out))) {
+                        ICompress.copyStream(new MappedInputStream(in, size), compressStream, codec.getBufferSize());
+                    }
+                }
+            });
+        }
+    }
+
+    static void decompress(ICompress codec, Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = in.size();
+            replace(target, out -> {
+                try (InputStream decompressStream = codec.createDecompressStream(new MappedInputStream(in, size))) {
+                    ICompress.copyStream(decompressStream, Channels.newOutputStream(out), codec.getBufferSize());
+                }
+            });
+        }
+    }
+
+    /**
+     * A bound on the compressed size of the codecs in this package, which all expand incompressible data by
+     * well under one eighth, plus a small constant for headers. Other codecs may exceed it, in which case the
+     * file is streamed instead.
+     */
+    private static int maxCompressedSize(int size) {
+        return size + (size >>> 3) + 64 * 1024;
+    }
+
+    /**
+     * Writes a temporary file next to {@code target} and moves it into place, so that readers never see a
+     * partially written target and a failure leaves an existing target untouched. The move is atomic where
+     * the file system supports it.
+     */
+    static void replace(Path target, Writer writer) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path temp = createTemp(target);
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writer.write(out);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Creates an empty, hidden sibling of {@code target}. Unlike {@link Files#createTempFile}, which restricts
+     * the file to its owner, it gets the permissions of any new file, which the target then inherits.
+     */
+    private static Path createTemp(Path target) throws IOException {
+        while (true) {
+            Path temp = target.resolveSibling("." + target.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                // taken by a concurrent call, pick another name
+            }
+        }
+    }
+
+    interface Writer {
+        void write(FileChannel out) throws IOException;
+    }
+
+    /**
+     * Reads a file through memory-mapped regions of up to 1 GiB, mapping the next region when one is exhausted.
+     */
+    private static final class MappedInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long size;
+        private long mapped;
+        private MappedByteBuffer buffer;
+
+        MappedInputStream(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return next() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!next()) return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer == null ? 0 : buffer.remaining();
+        }
+
+        private boolean next() throws IOException {
+            if (buffer != null && buffer.hasRemaining()) return true;
+            if (mapped == size) return false;
+            long length = Math.min(MAP_SIZE, size - mapped);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapped, length);
+            mapped += length;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.Threads;
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Range;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compresses chunks asynchronously and publishes the compressed chunks, in submission order, to a single
+ * {@link Flow.Subscriber}.
+ * <p>
+ * Producers hand chunks off with {@link #offer(byte[])}, which never blocks and returns {@code false} once
+ * {@linkplain Builder#maxPendingChunks(int) the pending chunk limit} is reached, or with
+ * {@link #submit(byte[])}, which waits for room. A chunk stays pending from submission until the subscriber
+ * has received its compressed form, so a slow subscriber pushes back on producers instead of letting
+ * memory grow; memory use is bounded by the limit times the chunk size.
+ * <p>
+ * Chunks are compressed on the executor, and delivered to the subscriber on the delivery executor, which
+ * may block in {@link Flow.Subscriber#onNext(Object) onNext} to write the data out. The delivery executor
+ * defaults to one shared by all pipelines, which uses virtual threads on Java 21 and later.
+ * <p>
+ * Every chunk is compressed on its own with {@link ICompress#compress(byte[])}, so every compressed chunk is
+ * a complete frame. For gzip, zstd and LZ4, the concatenated chunks form a single valid stream, which
+ * {@link ParallelDecompress} reads back on several threads in the case of zstd; with other codecs, keep the
+ * chunks apart, e.g. with {@link BatchCompress.RecordWriter}.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * CompressPipeline pipeline = CompressPipeline.builder(ZstdCompress.getInstance()).build();
+ * CompletableFuture<Void> written = pipeline.writeTo(out);
+ * // on the tick thread
+ * if (!pipeline.offer(snapshot)) deferred.add(snapshot);
+ * // on shutdown
+ * pipeline.close();
+ * written.join();
+ * }</pre>
+ */
+public final class CompressPipeline implements Flow.Publisher<byte[]>, AutoCloseable {
+    private final ICompress codec;
+    private final Executor executor;
+    private final Executor deliveryExecutor;
+    private final Semaphore permits;
+    /**
+     * The pending chunks in submission order; added to under {@link #lock}, removed from by {@link #drain()}.
+     */
+    private final Queue<CompletableFuture<byte[]>> queue = new ConcurrentLinkedQueue<>();
+    private final Object lock = new Object();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile Flow.Subscriber<? super byte[]> subscriber;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+    private volatile boolean cancelled;
+    /**
+     * Whether the subscriber has received its terminal signal; only accessed by {@link #drain()}.
+     */
+    private boolean done;
+
+    private CompressPipeline(Builder builder) {
+        this.codec = builder.codec;
+        this.executor = builder.executor;
+        this.deliveryExecutor = builder.deliveryExecutor;
+        this.permits = new Semaphore(builder.maxPendingChunks);
+    }
+
+    /**
+     * Returns a builder for a pipeline compressing with the given codec.
+     *
+     * @param codec the codec
+     * @return a new builder
+     */
+    public static Builder builder(@NotNull ICompress codec) {
+        Validate.notNull(codec, "Codec must not be null");
+        return new Builder(codec);
+    }
+
+    /**
+     * Submits a chunk unless the pending chunk limit is reached. Never blocks. The pipeline takes over the
+     * array, which must not be modified afterwards.
+     *
+     * @param chunk the data to compress
+     * @return {@code true} if the chunk was accepted, {@code false} if the pipeline is full
+     * @throws IllegalStateException if the pipeline was closed or has failed
+     */
+    public boolean offer(byte @NotNull [] chunk) {
+        Validate.notNull(chunk, "Chunk must not be null");
+        ensureOpen();
+        if (!permits.tryAcquire()) return false;
+        enqueue(chunk);
+        return true;
+    }
+
+    /**
+     * Submits a chunk, waiting while the pending chunk limit is reached. The pipeline takes over the array,
+     * which must not be modified afterwards.
+     *
+     * @param chunk the data to compress
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws IllegalStateException if the pipeline was closed or has failed
+     */
+    public void submit(byte @NotNull [] chunk) throws InterruptedException {
+        Validate.notNull(chunk, "Chunk must not be null");
+        ensureOpen();
+        permits.acquire();
+        enqueue(chunk);
+    }
+
+    /**
+     * Stops accepting chunks. The subscriber is completed once the chunks submitted so far are delivered.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        schedule();
+    }
+
+    /**
+     * Subscribes the single subscriber of this pipeline. Chunks submitted before are held, not dropped.
+     *
+     * @param subscriber the subscriber
+     * @throws NullPointerException if {@code subscriber} is null
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super byte[]> subscriber) {
+        Objects.requireNonNull(subscriber, "Subscriber must not be null");
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("CompressPipeline allows only one subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Subscription());
+        this.subscriber = subscriber;
+        schedule();
+    }
+
+    /**
+     * Subscribes a subscriber that writes the compressed chunks to a stream, which is flushed but not
+     * closed at the end.
+     *
+     * @param os the destination of the compressed data
+     * @return a future completed once all chunks are written, or exceptionally if compressing or writing fails
+     */
+    public CompletableFuture<Void> writeTo(@NotNull OutputStream os) {
+        Validate.notNull(os, "Output stream must not be null");
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(byte[] chunk) {
+                try {
+                    os.write(chunk);
+                } catch (IOException e) {
+                    // Record the cause first, so that producers see it rather than the cancellation.
+                    fail(e);
+                    subscription.cancel();
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                try {
+                    os.flush();
+                    result.complete(null);
+                } catch (IOException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        return result;
+    }
+
+    private void enqueue(byte[] chunk) {
+        CompletableFuture<byte[]> future;
+        synchronized (lock) {
+            if (closed) {
+                // Pass the permit on, so that blocked submitters wake up and fail as well.
+                permits.release();
+                ensureOpen();
+            }
+            try {
+                future = CompletableFuture.supplyAsync(() -> compress(chunk), executor);
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+            queue.add(future);
+        }
+        future.whenComplete((compressed, e) -> schedule());
+    }
+
+    private byte[] compress(byte[] chunk) {
+        try {
+            return codec.compress(chunk);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void ensureOpen() {
+        Throwable t = failure;
+        if (t != null) throw new IllegalStateException("CompressPipeline failed", t);
+        if (closed) throw new IllegalStateException("CompressPipeline is closed");
+    }
+
+    private void fail(Throwable t) {
+        synchronized (lock) {
+            if (failure == null) failure = t;
+            closed = true;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (wip.getAndIncrement() == 0) deliveryExecutor.execute(this::drain);
+    }
+
+    /**
+     * Delivers the compressed chunks at the head of the queue as far as demand allows. Runs on one thread
+     * at a time; signals arriving meanwhile make it loop again.
+     */
+    private void drain() {
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super byte[]> s = subscriber;
+            if (cancelled || (failure != null && (s == null || done))) {
+                // Release the permits now; a subscriber arriving later still receives the failure.
+                discard();
+            } else if (s != null && !done) {
+                long requested = demand.get();
+                long delivered = 0;
+                while (!cancelled) {
+                    Throwable t = failure;
+                    if (t != null) {
+                        done = true;
+                        discard();
+                        s.onError(t);
+                        break;
+                    }
+                    CompletableFuture<byte[]> head = queue.peek();
+                    if (head == null) {
+                        if (closed) {
+                            done = true;
+                            s.onComplete();
+                        }
+                        break;
+                    }
+                    if (!head.isDone() || delivered == requested) break;
+                    queue.poll();
+                    byte[] compressed;
+                    try {
+                        compressed = head.join();
+                    } catch (CompletionException e) {
+                        permits.release();
+                        fail(e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause());
+                        continue;
+                    }
+                    permits.release();
+                    delivered++;
+                    try {
+                        s.onNext(compressed);
+                    } catch (Throwable e) {
+                        cancelled = true;
+                        fail(e);
+                    }
+                }
+                if (delivered > 0 && requested != Long.MAX_VALUE) demand.addAndGet(-delivered);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void discard() {
+        CompletableFuture<byte[]> future;
+        while ((future = queue.poll()) != null) {
+            future.cancel(false);
+            permits.release();
+        }
+    }
+
+    private final class Subscription implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Requested count must be positive"));
+                return;
+            }
+            demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            fail(new CancellationException("Subscription cancelled"));
+        }
+    }
+
+    /**
+     * Configures a {@link CompressPipeline}.
+     */
+    public static final class Builder {
+        private final ICompress codec;
+        private Executor executor = ForkJoinPool.commonPool();
+        private Executor deliveryExecutor;
+        private int maxPendingChunks = Runtime.getRuntime().availableProcessors() * 2;
+
+        private Builder(ICompress codec) {
+            this.codec = codec;
+        }
+
+        /**
+         * Sets the executor the chunks are compressed on; defaults to the common fork-join pool.
+         *
+         * @param executor the executor
+         * @return this builder
+         */
+        public Builder executor(@NotNull Executor executor) {
+            Validate.notNull(executor, "Executor must not be null");
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the executor the subscriber is called on; defaults to a shared executor running on virtual
+         * threads where available and on a small daemon thread pool otherwise, so the subscriber may block on I/O.
+         *
+         * @param deliveryExecutor the executor
+         * @return this builder
+         */
+        public Builder deliveryExecutor(@NotNull Executor deliveryExecutor) {
+            Validate.notNull(deliveryExecutor, "Delivery executor must not be null");
+            this.deliveryExecutor = deliveryExecutor;
+            return this;
+        }
+
+        /**
+         * Sets how many chunks may be compressing or waiting for the subscriber at once. Defaults to twice
+         * the number of available processors.
+         *
+         * @param maxPendingChunks the maximum number of pending chunks
+         * @return this builder
+         */
+        public Builder maxPendingChunks(@Range(from = 1, to = Integer.MAX_VALUE) int maxPendingChunks) {
+            if (maxPendingChunks < 1) throw new IllegalArgumentException("maxPendingChunks must be positive");
+            this.maxPendingChunks = maxPendingChunks;
+            return this;
+        }
+
+        /**
+         * Creates the pipeline.
+         *
+         * @return the configured pipeline
+         */
+        public CompressPipeline build() {
+            if (deliveryExecutor == null) deliveryExecutor = DefaultDelivery.EXECUTOR;
+            return new CompressPipeline(this);
+        }
+    }
+
+    /**
+     * Holds the default delivery executor, created on first use.
+     */
+    private static final class DefaultDelivery {
+        static final Executor EXECUTOR = Threads.newBlockingExecutor("tiny-utils-compress");
+    }
+}
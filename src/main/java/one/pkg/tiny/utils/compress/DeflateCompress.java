@@ -0,0 +1,173 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Range;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * A zlib or gzip codec with a configurable {@link Deflater} level and strategy.
+ * <p>
+ * The output is identical in format to {@link BaseCompress#DEFLATE} and {@link BaseCompress#GZIP}, which remain
+ * the default-configured codecs; decompression is delegated to them.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * ICompress live = DeflateCompress.builder().format(DeflateCompress.Format.GZIP).level(Deflater.BEST_SPEED).build();
+ * ICompress archive = DeflateCompress.builder().format(DeflateCompress.Format.GZIP).level(Deflater.BEST_COMPRESSION).build();
+ * }</pre>
+ */
+public final class DeflateCompress implements ICompress {
+    private final Format format;
+    private final int level;
+    private final int strategy;
+
+    private DeflateCompress(Builder builder) {
+        this.format = builder.format;
+        this.level = builder.level;
+        this.strategy = builder.strategy;
+    }
+
+    /**
+     * Returns a builder for a configured codec.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the container format written by this codec.
+     *
+     * @return the format
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    @Override
+    public InputStream createDecompressStream(InputStream is) throws IOException {
+        return format.base.createDecompressStream(is);
+    }
+
+    @Override
+    public OutputStream createCompressStream(OutputStream os) throws IOException {
+        ZlibPool pool = ZlibPool.getDefault();
+        Deflater deflater = pool.acquireDeflater(level, strategy, format == Format.GZIP);
+        if (format == Format.ZLIB) return new Zlib.PooledDeflaterOutputStream(os, pool, deflater, BaseCompress.STREAM_BUFFER_SIZE);
+        try {
+            return new Zlib.GzipOutputStream(os, pool, deflater, BaseCompress.STREAM_BUFFER_SIZE);
+        } catch (IOException e) {
+            pool.release(deflater);
+            throw e;
+        }
+    }
+
+    @Override
+    public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        ZlibPool pool = ZlibPool.getDefault();
+        Deflater deflater = pool.acquireDeflater(level, strategy, format == Format.GZIP);
+        try {
+            return format == Format.GZIP ? Zlib.gzip(deflater, src, dst) : Zlib.deflate(deflater, src, dst);
+        } finally {
+            pool.release(deflater);
+        }
+    }
+
+    @Override
+    public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        return format.base.decompress(src, dst);
+    }
+
+    @Override
+    public String getFileExtension() {
+        return format.base.getFileExtension();
+    }
+
+    /**
+     * The container around the deflate stream.
+     */
+    public enum Format {
+        /**
+         * A zlib stream, as written by {@link BaseCompress#DEFLATE}.
+         */
+        ZLIB(BaseCompress.DEFLATE),
+        /**
+         * A gzip member, as written by {@link BaseCompress#GZIP}.
+         */
+        GZIP(BaseCompress.GZIP);
+
+        final BaseCompress base;
+
+        Format(BaseCompress base) {
+            this.base = base;
+        }
+    }
+
+    /**
+     * Configures a {@link DeflateCompress} codec. Settings left untouched keep the zlib defaults.
+     */
+    public static final class Builder {
+        private Format format = Format.ZLIB;
+        private int level = Deflater.DEFAULT_COMPRESSION;
+        private int strategy = Deflater.DEFAULT_STRATEGY;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the container format; the default is {@link Format#ZLIB}.
+         *
+         * @param format the format
+         * @return this builder
+         */
+        public Builder format(@NotNull Format format) {
+            Validate.notNull(format, "Format must not be null");
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * Sets the compression level, from {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION},
+         * or {@link Deflater#DEFAULT_COMPRESSION} for zlib's default of 6.
+         *
+         * @param level the level
+         * @return this builder
+         */
+        public Builder level(@Range(from = -1, to = 9) int level) {
+            if (level < -1 || level > 9) throw new IllegalArgumentException("level must be between -1 and 9");
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * Sets the strategy: {@link Deflater#DEFAULT_STRATEGY}, {@link Deflater#FILTERED} for data made of small
+         * values with a somewhat random distribution, or {@link Deflater#HUFFMAN_ONLY}, which skips string
+         * matching altogether.
+         *
+         * @param strategy the strategy
+         * @return this builder
+         */
+        public Builder strategy(int strategy) {
+            if (strategy != Deflater.DEFAULT_STRATEGY && strategy != Deflater.FILTERED && strategy != Deflater.HUFFMAN_ONLY)
+                throw new IllegalArgumentException("Unknown deflater strategy: " + strategy);
+            this.strategy = strategy;
+            return this;
+        }
+
+        /**
+         * Creates the codec.
+         *
+         * @return the configured codec
+         */
+        public ICompress build() {
+            return new DeflateCompress(this);
+        }
+    }
+}
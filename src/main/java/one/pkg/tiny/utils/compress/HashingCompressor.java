@@ -0,0 +1,270 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.Validate;
+import one.pkg.tiny.utils.hash.HashAlgorithm;
+import one.pkg.tiny.utils.hash.Hasher;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compresses data while hashing both the raw input and the compressed output in the same pass, so that
+ * archiving a file does not require reading it, or its compressed copy, a second time.
+ * <p>
+ * Extra sinks can receive a copy of the raw or compressed bytes as they pass, e.g. an uploader or a second
+ * digest. Sinks are flushed but not closed; a failing sink fails the whole operation.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * HashingCompressor.Result result = HashingCompressor.builder(ZstdCompress.getInstance()).build()
+ *         .compressFile(source, target);
+ * index.put(source, result.getRawHash(), result.getCompressedHash());
+ * }</pre>
+ * Every call uses its own hashers, so a compressor without sinks may be used concurrently.
+ */
+public final class HashingCompressor {
+    private final ICompress codec;
+    private final HashAlgorithm rawAlgorithm;
+    private final HashAlgorithm compressedAlgorithm;
+    private final List<OutputStream> rawSinks;
+    private final List<OutputStream> compressedSinks;
+
+    private HashingCompressor(Builder builder) {
+        this.codec = builder.codec;
+        this.rawAlgorithm = builder.rawAlgorithm;
+        this.compressedAlgorithm = builder.compressedAlgorithm;
+        this.rawSinks = List.copyOf(builder.rawSinks);
+        this.compressedSinks = List.copyOf(builder.compressedSinks);
+    }
+
+    /**
+     * Returns a builder for a compressor using the given codec; both sides are hashed with SHA-256 by default.
+     *
+     * @param codec the codec
+     * @return a new builder
+     */
+    public static Builder builder(@NotNull ICompress codec) {
+        Validate.notNull(codec, "Codec must not be null");
+        return new Builder(codec);
+    }
+
+    /**
+     * Compresses a stream, like {@link ICompress#compress(InputStream, OutputStream)}.
+     *
+     * @param is the data to compress
+     * @param os the destination of the compressed data; closed when done
+     * @return the hashes and sizes of both sides
+     * @throws IOException if an I/O error occurs or compression fails
+     */
+    public Result compress(@NotNull InputStream is, @NotNull OutputStream os) throws IOException {
+        Validate.notNull(is, "Input stream must not be null");
+        Validate.notNull(os, "Output stream must not be null");
+        Tee compressed = new Tee(os, compressedAlgorithm.newHasher(), compressedSinks);
+        Tee raw;
+        try (OutputStream compressStream = codec.createCompressStream(compressed)) {
+            raw = new Tee(compressStream, rawAlgorithm.newHasher(), rawSinks);
+            ICompress.copyStream(is, raw, codec.getBufferSize());
+            raw.flushSinks();
+        }
+        compressed.flushSinks();
+        return new Result(raw.hasher.finish(), raw.count, compressed.hasher.finish(), compressed.count);
+    }
+
+    /**
+     * Compresses a file into another file, which is written to a temporary file first and then atomically
+     * replaces {@code target}.
+     *
+     * @param source the file to compress
+     * @param target the compressed file to create or replace
+     * @return the hashes and sizes of both files
+     * @throws IOException if a file cannot be read or written or compression fails
+     */
+    public Result compressFile(@NotNull Path source, @NotNull Path target) throws IOException {
+        Validate.notNull(source, "Source must not be null");
+        Validate.notNull(target, "Target must not be null");
+        Result[] result = new Result[1];
+        try (InputStream in = Files.newInputStream(source)) {
+            CompressFiles.replace(target, out -> result[0] = compress(in, Channels.newOutputStream(out)));
+        }
+        return result[0];
+    }
+
+    /**
+     * Passes bytes on to the target while hashing, counting and copying them to the sinks.
+     */
+    private static final class Tee extends OutputStream {
+        private final OutputStream out;
+        private final Hasher hasher;
+        private final List<OutputStream> sinks;
+        private long count;
+
+        Tee(OutputStream out, Hasher hasher, List<OutputStream> sinks) {
+            this.out = out;
+            this.hasher = hasher;
+            this.sinks = sinks;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte @NotNull [] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            hasher.update(b, off, len);
+            for (OutputStream sink : sinks) sink.write(b, off, len);
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        void flushSinks() throws IOException {
+            for (OutputStream sink : sinks) sink.flush();
+        }
+    }
+
+    /**
+     * The hashes and sizes of the raw and the compressed data.
+     */
+    public static final class Result {
+        private final byte[] rawHash;
+        private final long rawSize;
+        private final byte[] compressedHash;
+        private final long compressedSize;
+
+        private Result(byte[] rawHash, long rawSize, byte[] compressedHash, long compressedSize) {
+            this.rawHash = rawHash;
+            this.rawSize = rawSize;
+            this.compressedHash = compressedHash;
+            this.compressedSize = compressedSize;
+        }
+
+        /**
+         * Returns the hash of the raw input.
+         *
+         * @return a copy of the hash
+         */
+        public byte[] getRawHash() {
+            return rawHash.clone();
+        }
+
+        /**
+         * Returns the number of raw bytes read.
+         *
+         * @return the raw size
+         */
+        public long getRawSize() {
+            return rawSize;
+        }
+
+        /**
+         * Returns the hash of the compressed output, equal to the hash of the compressed file.
+         *
+         * @return a copy of the hash
+         */
+        public byte[] getCompressedHash() {
+            return compressedHash.clone();
+        }
+
+        /**
+         * Returns the number of compressed bytes written.
+         *
+         * @return the compressed size
+         */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+    }
+
+    /**
+     * Configures a {@link HashingCompressor}.
+     */
+    public static final class Builder {
+        private final ICompress codec;
+        private final List<OutputStream> rawSinks = new ArrayList<>();
+        private final List<OutputStream> compressedSinks = new ArrayList<>();
+        private HashAlgorithm rawAlgorithm = HashAlgorithm.SHA_256;
+        private HashAlgorithm compressedAlgorithm = HashAlgorithm.SHA_256;
+
+        private Builder(ICompress codec) {
+            this.codec = codec;
+        }
+
+        /**
+         * Sets the algorithm the raw input is hashed with.
+         *
+         * @param algorithm the algorithm
+         * @return this builder
+         */
+        public Builder rawHash(@NotNull HashAlgorithm algorithm) {
+            Validate.notNull(algorithm, "Algorithm must not be null");
+            this.rawAlgorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * Sets the algorithm the compressed output is hashed with.
+         *
+         * @param algorithm the algorithm
+         * @return this builder
+         */
+        public Builder compressedHash(@NotNull HashAlgorithm algorithm) {
+            Validate.notNull(algorithm, "Algorithm must not be null");
+            this.compressedAlgorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * Adds a sink that receives a copy of the raw input. The sink is shared by all calls of the built
+         * compressor, which must then not be used concurrently.
+         *
+         * @param sink the sink
+         * @return this builder
+         */
+        public Builder rawSink(@NotNull OutputStream sink) {
+            Validate.notNull(sink, "Sink must not be null");
+            rawSinks.add(sink);
+            return this;
+        }
+
+        /**
+         * Adds a sink that receives a copy of the compressed output. The sink is shared by all calls of the
+         * built compressor, which must then not be used concurrently.
+         *
+         * @param sink the sink
+         * @return this builder
+         */
+        public Builder compressedSink(@NotNull OutputStream sink) {
+            Validate.notNull(sink, "Sink must not be null");
+            compressedSinks.add(sink);
+            return this;
+        }
+
+        /**
+         * Creates the compressor.
+         *
+         * @return the configured compressor
+         */
+        public HashingCompressor build() {
+            return new HashingCompressor(this);
+        }
+    }
+}
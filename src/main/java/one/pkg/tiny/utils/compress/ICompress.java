@@ -1,30 +1,180 @@
 package one.pkg.tiny.utils.compress;
 
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 
 public interface ICompress {
+    /**
+     * The size of the copy buffer used before buffers were pooled; kept for compatibility.
+     */
     int BUFFER_SIZE = 1024;
+    /**
+     * The default size of the pooled copy buffer, 64 KiB.
+     */
+    int DEFAULT_BUFFER_SIZE = 64 * 1024;
 
     static void copyStream(InputStream is, OutputStream os) throws IOException {
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int len;
-        while ((len = is.read(buffer)) != -1) {
-            os.write(buffer, 0, len);
+        copyStream(is, os, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Copies all bytes from the input stream to the output stream through a pooled buffer.
+     *
+     * @param is         the source
+     * @param os         the destination
+     * @param bufferSize the size of the copy buffer; buffers of common sizes are pooled, see {@link BufferPool#of(int)}
+     * @throws IOException if an I/O error occurs
+     */
+    static void copyStream(InputStream is, OutputStream os, int bufferSize) throws IOException {
+        BufferPool pool = BufferPool.of(bufferSize);
+        byte[] buffer = pool.acquire();
+        try {
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                os.write(buffer, 0, len);
+            }
+        } finally {
+            pool.release(buffer);
         }
     }
 
     default void decompress(InputStream is, OutputStream os) throws IOException {
         try (InputStream decompressStream = createDecompressStream(is)) {
-            copyStream(decompressStream, os);
+            copyStream(decompressStream, os, getBufferSize());
         }
     }
 
     default void compress(InputStream is, OutputStream os) throws IOException {
         try (OutputStream compressStream = createCompressStream(os)) {
-            copyStream(is, compressStream);
+            copyStream(is, compressStream, getBufferSize());
+        }
+    }
+
+    /**
+     * Compresses a complete message in one call.
+     * <p>
+     * Codecs with a reusable native context override this to avoid per-call setup costs.
+     *
+     * @param data the data to compress
+     * @return the compressed data
+     * @throws IOException if compression fails
+     */
+    default byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compress(new ByteArrayInputStream(data), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decompresses a complete message in one call.
+     *
+     * @param data the compressed data
+     * @return the decompressed data
+     * @throws IOException if the data is corrupt
+     */
+    default byte[] decompress(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        decompress(new ByteArrayInputStream(data), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Compresses the remaining bytes of {@code src} into {@code dst}.
+     * <p>
+     * The compressed data is written starting at the position of {@code dst}; the positions of both buffers
+     * are advanced past the consumed and produced bytes. Codecs with a native buffer API override this to
+     * work on direct buffers without copying through the heap; the default implementation streams through
+     * {@link #createCompressStream(OutputStream)}.
+     *
+     * @param src the data to compress
+     * @param dst the buffer receiving the compressed data
+     * @return the number of bytes written to {@code dst}
+     * @throws IOException if {@code dst} is too small or compression fails
+     */
+    default int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        int start = dst.position();
+        try (OutputStream compressStream = createCompressStream(new ByteBuffers.Out(dst))) {
+            copyStream(new ByteBuffers.In(src), compressStream, getBufferSize());
         }
+        return dst.position() - start;
+    }
+
+    /**
+     * Decompresses the remaining bytes of {@code src} into {@code dst}.
+     * <p>
+     * The decompressed data is written starting at the position of {@code dst}; the positions of both buffers
+     * are advanced past the consumed and produced bytes.
+     *
+     * @param src the compressed data
+     * @param dst the buffer receiving the decompressed data
+     * @return the number of bytes written to {@code dst}
+     * @throws IOException if {@code dst} is too small or the data is corrupt
+     */
+    default int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        int start = dst.position();
+        try (InputStream decompressStream = createDecompressStream(new ByteBuffers.In(src))) {
+            copyStream(decompressStream, new ByteBuffers.Out(dst), getBufferSize());
+        }
+        return dst.position() - start;
+    }
+
+    /**
+     * Compresses a file into another file.
+     * <p>
+     * Sources up to 1 MiB are read into a pooled direct buffer and compressed in one
+     * {@link #compress(ByteBuffer, ByteBuffer)} call into another, so codecs with a native buffer API never
+     * copy through the heap; larger sources are memory-mapped and streamed. The result is written to a
+     * temporary file in the directory of {@code target}, created with the default permissions, which then
+     * replaces {@code target}, atomically where the file system supports it; on failure {@code target} is
+     * left unchanged.
+     *
+     * @param source the file to compress
+     * @param target the compressed file to create or replace
+     * @throws IOException if a file cannot be read or written or compression fails
+     */
+    default void compressFile(@NotNull Path source, @NotNull Path target) throws IOException {
+        Validate.notNull(source, "Source must not be null");
+        Validate.notNull(target, "Target must not be null");
+        CompressFiles.compress(this, source, target);
+    }
+
+    /**
+     * Decompresses a file into another file.
+     * <p>
+     * The source is memory-mapped and the decompressed data, whose size is not known in advance, is streamed
+     * to a temporary file in the directory of {@code target}, created with the default permissions, which then
+     * replaces {@code target}, atomically where the file system supports it; on failure {@code target} is left
+     * unchanged.
+     *
+     * @param source the compressed file
+     * @param target the file to create or replace
+     * @throws IOException if a file cannot be read or written or the data is corrupt
+     */
+    default void decompressFile(@NotNull Path source, @NotNull Path target) throws IOException {
+        Validate.notNull(source, "Source must not be null");
+        Validate.notNull(target, "Target must not be null");
+        CompressFiles.decompress(this, source, target);
+    }
+
+    /**
+     * Returns the size of the copy buffer used by {@link #compress(InputStream, OutputStream)} and
+     * {@link #decompress(InputStream, OutputStream)}.
+     * <p>
+     * Codecs override this to match the block size their native stream prefers, so that every write
+     * hands the codec a full block instead of many small chunks.
+     *
+     * @return the buffer size in bytes
+     */
+    default int getBufferSize() {
+        return DEFAULT_BUFFER_SIZE;
     }
 
     InputStream createDecompressStream(InputStream is) throws IOException;
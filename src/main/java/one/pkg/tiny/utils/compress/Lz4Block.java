@@ -0,0 +1,284 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.IdleQueue;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A pure-Java implementation of the LZ4 block format.
+ * <p>
+ * Blocks carry neither their compressed nor their decompressed length, which the caller has to store;
+ * {@link Lz4Compress} wraps blocks in the self-describing LZ4 frame format. The compressor is the
+ * greedy single-probe algorithm of the reference {@code LZ4_compress_default}, and its output can be
+ * decoded by every LZ4 implementation.
+ */
+public final class Lz4Block {
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    /**
+     * A match must start at least this many bytes before the end of the block.
+     */
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int HASH_LOG = 12;
+    private static final int SKIP_STRENGTH = 6;
+    private static final int RUN_MASK = 15;
+    private static final int ML_MASK = 15;
+    /**
+     * Idle hash tables of the compressor, 16 KiB each.
+     */
+    private static final IdleQueue<int[]> TABLES = new IdleQueue<>(Runtime.getRuntime().availableProcessors() * 2);
+
+    private Lz4Block() {
+    }
+
+    /**
+     * Returns the largest compressed size of a block of the given length, reached by incompressible data.
+     *
+     * @param length the uncompressed length
+     * @return the maximum compressed length
+     */
+    public static int maxCompressedLength(int length) {
+        if (length < 0) throw new IllegalArgumentException("length must not be negative");
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses a block.
+     *
+     * @param src       the data
+     * @param srcOff    the start offset of the data
+     * @param srcLen    the length of the data
+     * @param dst       the array receiving the block
+     * @param dstOff    the offset the block is written at
+     * @param maxDstLen the space available in {@code dst}; {@link #maxCompressedLength(int)} always suffices
+     * @return the compressed length, or {@code -1} if the block does not fit into {@code maxDstLen} bytes
+     */
+    public static int compress(byte @NotNull [] src, int srcOff, int srcLen, byte @NotNull [] dst, int dstOff, int maxDstLen) {
+        Objects.checkFromIndexSize(srcOff, srcLen, src.length);
+        Objects.checkFromIndexSize(dstOff, maxDstLen, dst.length);
+        int[] table = TABLES.poll();
+        if (table == null) table = new int[1 << HASH_LOG];
+        try {
+            return compress(src, srcOff, srcLen, dst, dstOff, maxDstLen, table);
+        } finally {
+            TABLES.offer(table);
+        }
+    }
+
+    private static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int maxDstLen, int[] table) {
+        Arrays.fill(table, -1);
+        int srcEnd = srcOff + srcLen;
+        int dstEnd = dstOff + maxDstLen;
+        int sOff = srcOff;
+        int dOff = dstOff;
+        int anchor = srcOff;
+
+        if (srcLen > MF_LIMIT) {
+            int mfLimit = srcEnd - MF_LIMIT;
+            int matchLimit = srcEnd - LAST_LITERALS;
+            table[hash(src, sOff)] = sOff++;
+            main:
+            while (true) {
+                int forwardOff = sOff;
+                int ref;
+                int step = 1;
+                int searchMatchNb = 1 << SKIP_STRENGTH;
+                do {
+                    sOff = forwardOff;
+                    forwardOff += step;
+                    step = searchMatchNb++ >>> SKIP_STRENGTH;
+                    if (forwardOff > mfLimit) break main;
+                    int h = hash(src, sOff);
+                    ref = table[h];
+                    table[h] = sOff;
+                } while (ref < 0 || sOff - ref > MAX_DISTANCE || (int) INT.get(src, ref) != (int) INT.get(src, sOff));
+
+                while (sOff > anchor && ref > srcOff && src[sOff - 1] == src[ref - 1]) {
+                    sOff--;
+                    ref--;
+                }
+
+                int literals = sOff - anchor;
+                int tokenOff = dOff++;
+                if (dOff + literals + literals / 255 + 2 + 1 + LAST_LITERALS > dstEnd) return -1;
+                if (literals >= RUN_MASK) {
+                    dst[tokenOff] = (byte) (RUN_MASK << 4);
+                    dOff = writeLength(literals - RUN_MASK, dst, dOff);
+                } else {
+                    dst[tokenOff] = (byte) (literals << 4);
+                }
+                System.arraycopy(src, anchor, dst, dOff, literals);
+                dOff += literals;
+
+                while (true) {
+                    dst[dOff++] = (byte) (sOff - ref);
+                    dst[dOff++] = (byte) ((sOff - ref) >>> 8);
+                    sOff += MIN_MATCH;
+                    int matchLen = commonBytes(src, ref + MIN_MATCH, sOff, matchLimit);
+                    sOff += matchLen;
+                    if (matchLen >= ML_MASK) {
+                        if (dOff + matchLen / 255 + 1 + LAST_LITERALS > dstEnd) return -1;
+                        dst[tokenOff] |= ML_MASK;
+                        dOff = writeLength(matchLen - ML_MASK, dst, dOff);
+                    } else {
+                        dst[tokenOff] |= (byte) matchLen;
+                    }
+                    anchor = sOff;
+                    if (sOff > mfLimit) break main;
+
+                    table[hash(src, sOff - 2)] = sOff - 2;
+                    int h = hash(src, sOff);
+                    ref = table[h];
+                    table[h] = sOff;
+                    if (ref < 0 || sOff - ref > MAX_DISTANCE || (int) INT.get(src, ref) != (int) INT.get(src, sOff)) break;
+                    // A match right after a match: emit a token without literals.
+                    tokenOff = dOff++;
+                    if (dOff + 2 + 1 + LAST_LITERALS > dstEnd) return -1;
+                    dst[tokenOff] = 0;
+                }
+                sOff++;
+            }
+        }
+
+        int literals = srcEnd - anchor;
+        if (dOff + 1 + literals + (literals + 255 - RUN_MASK) / 255 > dstEnd) return -1;
+        if (literals >= RUN_MASK) {
+            dst[dOff++] = (byte) (RUN_MASK << 4);
+            dOff = writeLength(literals - RUN_MASK, dst, dOff);
+        } else {
+            dst[dOff++] = (byte) (literals << 4);
+        }
+        System.arraycopy(src, anchor, dst, dOff, literals);
+        return dOff + literals - dstOff;
+    }
+
+    /**
+     * Decompresses a block.
+     *
+     * @param src       the block
+     * @param srcOff    the start offset of the block
+     * @param srcLen    the exact length of the block
+     * @param dst       the array receiving the data
+     * @param dstOff    the offset the data is written at
+     * @param maxDstLen the space available in {@code dst}
+     * @return the decompressed length
+     * @throws IOException if the block is malformed or decompresses to more than {@code maxDstLen} bytes
+     */
+    public static int decompress(byte @NotNull [] src, int srcOff, int srcLen, byte @NotNull [] dst, int dstOff, int maxDstLen) throws IOException {
+        Objects.checkFromIndexSize(srcOff, srcLen, src.length);
+        Objects.checkFromIndexSize(dstOff, maxDstLen, dst.length);
+        return decompress(src, srcOff, srcLen, dst, dstOff, maxDstLen, dstOff);
+    }
+
+    /**
+     * Decompresses a block whose matches may reach back into {@code dst} as far as {@code windowStart},
+     * which holds the output of the previous blocks of a linked LZ4 frame.
+     */
+    static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int maxDstLen, int windowStart) throws IOException {
+        int srcEnd = srcOff + srcLen;
+        int dstEnd = dstOff + maxDstLen;
+        int sOff = srcOff;
+        int dOff = dstOff;
+        while (true) {
+            if (sOff >= srcEnd) throw malformed();
+            int token = src[sOff++] & 0xFF;
+
+            int literals = token >>> 4;
+            if (literals == RUN_MASK) {
+                int b;
+                do {
+                    if (sOff >= srcEnd) throw malformed();
+                    b = src[sOff++] & 0xFF;
+                    literals += b;
+                } while (b == 255 && literals > 0);
+                if (literals < 0) throw malformed();
+            }
+            if (literals > srcEnd - sOff) throw malformed();
+            if (literals > dstEnd - dOff) throw overflow();
+            System.arraycopy(src, sOff, dst, dOff, literals);
+            sOff += literals;
+            dOff += literals;
+            if (sOff == srcEnd) return dOff - dstOff;
+
+            if (srcEnd - sOff < 2) throw malformed();
+            int offset = (src[sOff] & 0xFF) | (src[sOff + 1] & 0xFF) << 8;
+            sOff += 2;
+            int ref = dOff - offset;
+            if (offset == 0 || ref < windowStart) throw malformed();
+
+            int matchLen = token & ML_MASK;
+            if (matchLen == ML_MASK) {
+                int b;
+                do {
+                    if (sOff >= srcEnd) throw malformed();
+                    b = src[sOff++] & 0xFF;
+                    matchLen += b;
+                } while (b == 255 && matchLen > 0);
+                if (matchLen < 0) throw malformed();
+            }
+            matchLen += MIN_MATCH;
+            if (matchLen < 0) throw malformed();
+            if (matchLen > dstEnd - dOff) throw overflow();
+            if (offset >= matchLen) {
+                System.arraycopy(dst, ref, dst, dOff, matchLen);
+                dOff += matchLen;
+            } else {
+                // The match overlaps its own output and repeats the last offset bytes; copy in growing runs.
+                while (matchLen > 0) {
+                    int n = Math.min(matchLen, dOff - ref);
+                    System.arraycopy(dst, ref, dst, dOff, n);
+                    dOff += n;
+                    matchLen -= n;
+                }
+            }
+        }
+    }
+
+    private static int hash(byte[] src, int off) {
+        return ((int) INT.get(src, off) * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    /**
+     * Returns the number of equal bytes at {@code ref} and {@code off}, not reading beyond {@code limit}.
+     */
+    private static int commonBytes(byte[] src, int ref, int off, int limit) {
+        int start = off;
+        while (off <= limit - 8) {
+            long diff = (long) LONG.get(src, ref) ^ (long) LONG.get(src, off);
+            if (diff != 0) return off - start + (Long.numberOfTrailingZeros(diff) >>> 3);
+            ref += 8;
+            off += 8;
+        }
+        while (off < limit && src[ref] == src[off]) {
+            ref++;
+            off++;
+        }
+        return off - start;
+    }
+
+    private static int writeLength(int length, byte[] dst, int dOff) {
+        while (length >= 255) {
+            dst[dOff++] = (byte) 255;
+            length -= 255;
+        }
+        dst[dOff++] = (byte) length;
+        return dOff;
+    }
+
+    private static IOException malformed() {
+        return new IOException("Malformed LZ4 block");
+    }
+
+    private static IOException overflow() {
+        return new IOException("LZ4 block decompresses to more than the available space");
+    }
+}
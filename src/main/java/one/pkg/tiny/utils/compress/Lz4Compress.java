@@ -0,0 +1,456 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.hash.XxHash32;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * A pure-Java LZ4 codec writing the standard LZ4 frame format, as read and written by the {@code lz4}
+ * command line tool.
+ * <p>
+ * LZ4 compresses at several hundred megabytes per second per core and decompresses faster still, at a lower
+ * ratio than deflate. It needs no native library, which makes it the fast codec of choice where zstd-jni or
+ * brotli4j cannot be loaded.
+ * <p>
+ * Frames are written with independent blocks, an optional XXH32 checksum per block and, by default, an
+ * XXH32 checksum of the content. The reader also accepts linked blocks, the content size field,
+ * concatenated frames and skippable frames; frames that require a dictionary are rejected.
+ * Raw blocks without a frame are available through {@link Lz4Block}.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * ICompress lz4 = Lz4Compress.builder().blockSize(Lz4Compress.BLOCK_SIZE_256K).build();
+ * }</pre>
+ */
+public final class Lz4Compress implements ICompress {
+    /**
+     * Maximum block size of 64 KiB, the default.
+     */
+    public static final int BLOCK_SIZE_64K = 64 * 1024;
+    /**
+     * Maximum block size of 256 KiB.
+     */
+    public static final int BLOCK_SIZE_256K = 256 * 1024;
+    /**
+     * Maximum block size of 1 MiB.
+     */
+    public static final int BLOCK_SIZE_1M = 1024 * 1024;
+    /**
+     * Maximum block size of 4 MiB.
+     */
+    public static final int BLOCK_SIZE_4M = 4 * 1024 * 1024;
+    static final int MAGIC = 0x184D2204;
+    private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+    private static final int SKIPPABLE_MASK = 0xFFFFFFF0;
+    private static final int VERSION = 1 << 6;
+    private static final int FLAG_BLOCK_INDEPENDENCE = 1 << 5;
+    private static final int FLAG_BLOCK_CHECKSUM = 1 << 4;
+    private static final int FLAG_CONTENT_SIZE = 1 << 3;
+    private static final int FLAG_CONTENT_CHECKSUM = 1 << 2;
+    private static final int FLAG_DICTIONARY_ID = 1;
+    private static final int UNCOMPRESSED = 0x80000000;
+    private static final int WINDOW_SIZE = 64 * 1024;
+    private static final ICompress INSTANCE = builder().build();
+
+    private final int blockSize;
+    private final boolean blockChecksum;
+    private final boolean contentChecksum;
+
+    private Lz4Compress(Builder builder) {
+        this.blockSize = builder.blockSize;
+        this.blockChecksum = builder.blockChecksum;
+        this.contentChecksum = builder.contentChecksum;
+    }
+
+    /**
+     * Returns a codec with 64 KiB blocks and a content checksum.
+     *
+     * @return the shared codec
+     */
+    public static ICompress getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a builder for a configured codec.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public InputStream createDecompressStream(InputStream is) throws IOException {
+        return new FrameInputStream(is);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Flushing the returned stream ends the current block early, so everything written so far becomes
+     * readable.
+     */
+    @Override
+    public OutputStream createCompressStream(OutputStream os) throws IOException {
+        return new FrameOutputStream(os);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Equal to the block size, so that every write fills a whole block.
+     */
+    @Override
+    public int getBufferSize() {
+        return blockSize;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".lz4";
+    }
+
+    private static int blockSizeId(int blockSize) {
+        return switch (blockSize) {
+            case BLOCK_SIZE_64K -> 4;
+            case BLOCK_SIZE_256K -> 5;
+            case BLOCK_SIZE_1M -> 6;
+            case BLOCK_SIZE_4M -> 7;
+            default -> throw new IllegalArgumentException("blockSize must be 64 KiB, 256 KiB, 1 MiB or 4 MiB");
+        };
+    }
+
+    private static void writeIntLE(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >>> 8);
+        b[off + 2] = (byte) (value >>> 16);
+        b[off + 3] = (byte) (value >>> 24);
+    }
+
+    private static int readIntLE(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+    }
+
+    private final class FrameOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] block;
+        private final byte[] compressed;
+        private final XxHash32 hash = contentChecksum ? new XxHash32() : null;
+        private int count;
+        private boolean closed;
+
+        FrameOutputStream(OutputStream out) throws IOException {
+            this.out = out;
+            this.block = new byte[blockSize];
+            this.compressed = new byte[4 + blockSize + 4];
+            int flags = VERSION | FLAG_BLOCK_INDEPENDENCE;
+            if (blockChecksum) flags |= FLAG_BLOCK_CHECKSUM;
+            if (contentChecksum) flags |= FLAG_CONTENT_CHECKSUM;
+            byte[] header = new byte[7];
+            writeIntLE(header, 0, MAGIC);
+            header[4] = (byte) flags;
+            header[5] = (byte) (blockSizeId(blockSize) << 4);
+            header[6] = (byte) (XxHash32.hash(header, 4, 2, 0) >>> 8);
+            out.write(header);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            block[count++] = (byte) b;
+            if (count == blockSize) writeBlock();
+        }
+
+        @Override
+        public void write(byte @NotNull [] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            ensureOpen();
+            while (len > 0) {
+                int n = Math.min(len, blockSize - count);
+                System.arraycopy(b, off, block, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                if (count == blockSize) writeBlock();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ensureOpen();
+            writeBlock();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try (out) {
+                writeBlock();
+                byte[] trailer = new byte[contentChecksum ? 8 : 4];
+                if (contentChecksum) writeIntLE(trailer, 4, hash.finishInt());
+                out.write(trailer);
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (count == 0) return;
+            if (hash != null) hash.update(block, 0, count);
+            // Blocks that do not shrink are stored as they are.
+            int size = Lz4Block.compress(block, 0, count, compressed, 4, count - 1);
+            if (size < 0) {
+                System.arraycopy(block, 0, compressed, 4, count);
+                writeIntLE(compressed, 0, count | UNCOMPRESSED);
+                size = count;
+            } else {
+                writeIntLE(compressed, 0, size);
+            }
+            if (blockChecksum) {
+                writeIntLE(compressed, 4 + size, XxHash32.hash(compressed, 4, size, 0));
+                size += 4;
+            }
+            out.write(compressed, 0, 4 + size);
+            count = 0;
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) throw new IOException("Stream closed");
+        }
+    }
+
+    private static final class FrameInputStream extends InputStream {
+        private final InputStream in;
+        private final byte[] header = new byte[15];
+        private final XxHash32 hash = new XxHash32();
+        private byte[] compressed = new byte[0];
+        /**
+         * Decoded data; for linked blocks preceded by up to 64 KiB of history.
+         */
+        private byte[] buffer = new byte[0];
+        private int position;
+        private int limit;
+        private int maxBlockSize;
+        private boolean independent;
+        private boolean hasBlockChecksum;
+        private boolean hasContentChecksum;
+        private long contentSize;
+        private long total;
+        private boolean inFrame;
+        private boolean eof;
+        private boolean closed;
+
+        FrameInputStream(InputStream in) throws IOException {
+            this.in = in;
+            if (!readFrameHeader()) throw new EOFException("Unexpected end of LZ4 stream");
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int n = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            ensureOpen();
+            return limit - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            in.close();
+        }
+
+        private boolean fill() throws IOException {
+            ensureOpen();
+            while (position == limit) {
+                if (eof) return false;
+                if (inFrame) readBlock();
+                else if (!readFrameHeader()) eof = true;
+            }
+            return true;
+        }
+
+        /**
+         * Reads the next frame header, skipping skippable frames.
+         *
+         * @return whether a frame follows; {@code false} at the end of the input
+         */
+        private boolean readFrameHeader() throws IOException {
+            while (true) {
+                int n = in.readNBytes(header, 0, 4);
+                if (n == 0) return false;
+                if (n < 4) throw new EOFException("Unexpected end of LZ4 stream");
+                int magic = readIntLE(header, 0);
+                if ((magic & SKIPPABLE_MASK) == SKIPPABLE_MAGIC) {
+                    readFully(header, 0, 4);
+                    in.skipNBytes(readIntLE(header, 0) & 0xFFFFFFFFL);
+                    continue;
+                }
+                if (magic != MAGIC) throw new IOException("Not an LZ4 frame");
+                break;
+            }
+            readFully(header, 4, 2);
+            int flags = header[4] & 0xFF;
+            int descriptor = header[5] & 0xFF;
+            if ((flags & 0xC0) != VERSION) throw new IOException("Unsupported LZ4 frame version");
+            if ((flags & 0x02) != 0 || (descriptor & 0x8F) != 0) throw new IOException("Malformed LZ4 frame header");
+            if ((flags & FLAG_DICTIONARY_ID) != 0) throw new IOException("LZ4 frames with a dictionary are not supported");
+            int sizeId = descriptor >>> 4;
+            if (sizeId < 4) throw new IOException("Malformed LZ4 frame header");
+            int length = 6;
+            if ((flags & FLAG_CONTENT_SIZE) != 0) {
+                readFully(header, length, 8);
+                contentSize = (readIntLE(header, length) & 0xFFFFFFFFL) | (long) readIntLE(header, length + 4) << 32;
+                length += 8;
+            } else {
+                contentSize = -1;
+            }
+            readFully(header, length, 1);
+            if ((byte) (XxHash32.hash(header, 4, length - 4, 0) >>> 8) != header[length])
+                throw new IOException("LZ4 frame header checksum mismatch");
+
+            maxBlockSize = 1 << (2 * sizeId + 8);
+            independent = (flags & FLAG_BLOCK_INDEPENDENCE) != 0;
+            hasBlockChecksum = (flags & FLAG_BLOCK_CHECKSUM) != 0;
+            hasContentChecksum = (flags & FLAG_CONTENT_CHECKSUM) != 0;
+            int bufferSize = maxBlockSize + (independent ? 0 : WINDOW_SIZE);
+            if (buffer.length < bufferSize) buffer = new byte[bufferSize];
+            if (compressed.length < maxBlockSize) compressed = new byte[maxBlockSize];
+            position = limit = 0;
+            total = 0;
+            hash.reset();
+            inFrame = true;
+            return true;
+        }
+
+        private void readBlock() throws IOException {
+            readFully(header, 0, 4);
+            int blockHeader = readIntLE(header, 0);
+            if (blockHeader == 0) {
+                endFrame();
+                return;
+            }
+            int size = blockHeader & ~UNCOMPRESSED;
+            if (size > maxBlockSize) throw new IOException("Malformed LZ4 block size");
+            readFully(compressed, 0, size);
+            if (hasBlockChecksum) {
+                readFully(header, 0, 4);
+                if (readIntLE(header, 0) != XxHash32.hash(compressed, 0, size, 0))
+                    throw new IOException("LZ4 block checksum mismatch");
+            }
+
+            // Linked blocks may refer to the last 64 KiB of output, which are kept in front of the new block.
+            int start = 0;
+            if (!independent) {
+                start = Math.min(limit, WINDOW_SIZE);
+                System.arraycopy(buffer, limit - start, buffer, 0, start);
+            }
+            int n;
+            if ((blockHeader & UNCOMPRESSED) != 0) {
+                System.arraycopy(compressed, 0, buffer, start, size);
+                n = size;
+            } else {
+                n = Lz4Block.decompress(compressed, 0, size, buffer, start, maxBlockSize, 0);
+            }
+            if (hasContentChecksum) hash.update(buffer, start, n);
+            total += n;
+            position = start;
+            limit = start + n;
+        }
+
+        private void endFrame() throws IOException {
+            if (hasContentChecksum) {
+                readFully(header, 0, 4);
+                if (readIntLE(header, 0) != hash.finishInt()) throw new IOException("LZ4 content checksum mismatch");
+            }
+            if (contentSize >= 0 && contentSize != total) throw new IOException("LZ4 content size mismatch");
+            inFrame = false;
+            position = limit = 0;
+        }
+
+        private void readFully(byte[] b, int off, int len) throws IOException {
+            if (in.readNBytes(b, off, len) != len) throw new EOFException("Unexpected end of LZ4 stream");
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Configures an {@link Lz4Compress} codec.
+     */
+    public static final class Builder {
+        private int blockSize = BLOCK_SIZE_64K;
+        private boolean blockChecksum;
+        private boolean contentChecksum = true;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum block size: {@link #BLOCK_SIZE_64K}, {@link #BLOCK_SIZE_256K}, {@link #BLOCK_SIZE_1M}
+         * or {@link #BLOCK_SIZE_4M}. Larger blocks compress slightly better but need more memory per stream.
+         *
+         * @param blockSize the block size in bytes
+         * @return this builder
+         */
+        public Builder blockSize(int blockSize) {
+            blockSizeId(blockSize);
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * Sets whether every block is followed by an XXH32 checksum of its compressed data; off by default.
+         *
+         * @param blockChecksum whether to write block checksums
+         * @return this builder
+         */
+        public Builder blockChecksum(boolean blockChecksum) {
+            this.blockChecksum = blockChecksum;
+            return this;
+        }
+
+        /**
+         * Sets whether the frame ends with an XXH32 checksum of the uncompressed content; on by default.
+         *
+         * @param contentChecksum whether to write a content checksum
+         * @return this builder
+         */
+        public Builder contentChecksum(boolean contentChecksum) {
+            this.contentChecksum = contentChecksum;
+            return this;
+        }
+
+        /**
+         * Creates the codec.
+         *
+         * @return the configured codec
+         */
+        public ICompress build() {
+            return new Lz4Compress(this);
+        }
+    }
+}
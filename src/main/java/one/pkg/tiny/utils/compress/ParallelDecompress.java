@@ -0,0 +1,440 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Range;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Decompresses multi-frame zstd and multi-member gzip data on several threads.
+ * <p>
+ * The input is scanned for frame boundaries without decompressing it: zstd frames by walking their block
+ * headers, gzip members by the {@code BC} extra field that BGZF writers such as {@code bgzip} put into every
+ * member to record its size. Consecutive frames are grouped into units of about 1 MiB, which are decompressed
+ * concurrently on the executor and emitted in input order through a bounded reorder buffer.
+ * <p>
+ * Data without such boundaries is decompressed sequentially: gzip members without a size field, such as the
+ * single member written by {@link ParallelGzipCompress}, and every other format recognized by
+ * {@link CompressDetector}. Zstd frames larger than the {@linkplain Builder#maxFrameSize(int) frame size limit}
+ * are decoded sequentially as well. In both cases the rest of the input from that frame on follows sequentially.
+ * <p>
+ * Decoded units are held in memory until read, so memory use is bounded by the number of pending units
+ * times their decompressed size.
+ */
+public final class ParallelDecompress {
+    /**
+     * The compressed size frames are grouped up to before a unit is dispatched, 1 MiB.
+     */
+    public static final int UNIT_SIZE = 1024 * 1024;
+    private static final int ZSTD_MAGIC = 0xFD2FB528;
+    private static final int ZSTD_MAX_BLOCK_SIZE = 128 * 1024;
+    private static final int GZIP_FEXTRA = 4;
+    private static final ParallelDecompress INSTANCE = builder().build();
+
+    private final Executor executor;
+    private final int maxPendingUnits;
+    private final int maxFrameSize;
+
+    private ParallelDecompress(Builder builder) {
+        this.executor = builder.executor;
+        this.maxPendingUnits = builder.maxPendingUnits;
+        this.maxFrameSize = builder.maxFrameSize;
+    }
+
+    /**
+     * Returns a decompressor running on the common fork-join pool.
+     *
+     * @return the shared decompressor
+     */
+    public static ParallelDecompress getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a builder for a configured decompressor.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Wraps a compressed stream in a decompressing stream. The returned stream is not thread-safe; closing it
+     * cancels pending units and closes {@code is}.
+     *
+     * @param is the compressed data
+     * @return the decompressing stream
+     * @throws IOException if the format is not recognized or the stream cannot be read
+     */
+    public InputStream createDecompressStream(@NotNull InputStream is) throws IOException {
+        Validate.notNull(is, "Input stream must not be null");
+        BufferedInputStream in = new BufferedInputStream(is, ICompress.DEFAULT_BUFFER_SIZE);
+        in.mark(4);
+        int b0 = in.read(), b1 = in.read(), b2 = in.read(), b3 = in.read();
+        in.reset();
+        if (b0 == 0x1F && b1 == 0x8B) return new UnitInputStream(in, true);
+        if ((b0 == 0x28 && b1 == 0xB5 && b2 == 0x2F && b3 == 0xFD) || ((b0 & 0xF0) == 0x50 && b1 == 0x2A && b2 == 0x4D && b3 == 0x18))
+            return new UnitInputStream(in, false);
+        return CompressDetector.createDecompressStream(in);
+    }
+
+    /**
+     * Decompresses a stream.
+     *
+     * @param is the compressed data
+     * @param os the destination of the decompressed data
+     * @throws IOException if the format is not recognized or the data is corrupt
+     */
+    public void decompress(@NotNull InputStream is, @NotNull OutputStream os) throws IOException {
+        Validate.notNull(os, "Output stream must not be null");
+        try (InputStream decompressStream = createDecompressStream(is)) {
+            decompressStream.transferTo(os);
+        }
+    }
+
+    /**
+     * Decompresses a file into another file, which is written to a temporary file first and then atomically
+     * replaces {@code target}.
+     *
+     * @param source the compressed file
+     * @param target the file to create or replace
+     * @throws IOException if a file cannot be read or written or the data is corrupt
+     */
+    public void decompressFile(@NotNull Path source, @NotNull Path target) throws IOException {
+        Validate.notNull(source, "Source must not be null");
+        Validate.notNull(target, "Target must not be null");
+        try (InputStream in = Files.newInputStream(source)) {
+            CompressFiles.replace(target, out -> decompress(in, Channels.newOutputStream(out)));
+        }
+    }
+
+    private static byte[] decode(Unit unit, boolean gzip) {
+        ICompress codec = gzip ? BaseCompress.GZIP : ZstdCompress.getInstance();
+        try {
+            if (!ByteBuffers.isPlausibleContentSize(unit.contentSize, unit.size))
+                return codec.decompress(Arrays.copyOf(unit.data, unit.size));
+            // The frames record plausible sizes, so decode them in one call straight into an exactly sized array.
+            byte[] out = new byte[(int) unit.contentSize];
+            if (codec.decompress(ByteBuffer.wrap(unit.data, 0, unit.size), ByteBuffer.wrap(out)) != out.length)
+                throw new IOException("Decompressed size does not match the frame headers");
+            return out;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Consecutive compressed frames and the total size they decompress to, or {@code -1} if not all frames
+     * record it.
+     */
+    private static final class Unit {
+        private byte[] data = new byte[UNIT_SIZE + ZSTD_MAX_BLOCK_SIZE];
+        private int size;
+        private long contentSize;
+
+        void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, data, size, len);
+            size += len;
+        }
+
+        void transferFrom(InputStream in, int len) throws IOException {
+            ensureCapacity(len);
+            if (in.readNBytes(data, size, len) != len) throw new EOFException("Unexpected end of compressed stream");
+            size += len;
+        }
+
+        void addContentSize(long length) {
+            contentSize = length < 0 || contentSize < 0 ? -1 : contentSize + length;
+        }
+
+        private void ensureCapacity(int len) {
+            if (len > data.length - size) data = Arrays.copyOf(data, Math.max(size + len, data.length * 2));
+        }
+    }
+
+    private final class UnitInputStream extends InputStream {
+        private final InputStream in;
+        private final boolean gzip;
+        private final ArrayDeque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+        private final byte[] header = new byte[18];
+        private Unit unit = new Unit();
+        private byte[] current = new byte[0];
+        private int position;
+        /**
+         * Decodes the rest of the input once frame boundaries are no longer known.
+         */
+        private InputStream sequential;
+        private boolean scanned;
+        private boolean closed;
+
+        UnitInputStream(InputStream in, boolean gzip) {
+            this.in = in;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            ensureOpen();
+            if (len == 0) return 0;
+            while (position == current.length) {
+                dispatch();
+                if (!pending.isEmpty()) {
+                    current = next();
+                    position = 0;
+                } else if (sequential != null) {
+                    return sequential.read(b, off, len);
+                } else {
+                    return -1;
+                }
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            ensureOpen();
+            return current.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            for (CompletableFuture<byte[]> future : pending) future.cancel(false);
+            pending.clear();
+            if (sequential != null) sequential.close();
+            else in.close();
+        }
+
+        /**
+         * Scans and submits units until the reorder buffer is full or the input is exhausted.
+         */
+        private void dispatch() throws IOException {
+            while (!scanned && pending.size() < maxPendingUnits) {
+                boolean more;
+                do {
+                    more = gzip ? scanMember() : scanFrame();
+                } while (more && unit.size < UNIT_SIZE);
+                if (!more) scanned = true;
+                if (unit.size > 0) submit(unit);
+                unit = new Unit();
+            }
+        }
+
+        private void submit(Unit data) throws IOException {
+            try {
+                pending.add(CompletableFuture.supplyAsync(() -> decode(data, gzip), executor));
+            } catch (RejectedExecutionException e) {
+                throw new IOException("Parallel decompression rejected by executor", e);
+            }
+        }
+
+        private byte[] next() throws IOException {
+            try {
+                return pending.poll().join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+                throw new IOException("Parallel decompression failed", e.getCause());
+            }
+        }
+
+        /**
+         * Appends the next zstd frame to the unit.
+         *
+         * @return whether the input may hold more frames
+         */
+        private boolean scanFrame() throws IOException {
+            int n = in.readNBytes(header, 0, 4);
+            if (n == 0) return false;
+            if (n < 4) throw new EOFException("Unexpected end of ZSTD stream");
+            int magic = intLE(header, 0);
+            if ((magic & 0xFFFFFFF0) == 0x184D2A50) {
+                // Skippable frames carry no content.
+                readFully(header, 4, 4);
+                in.skipNBytes(intLE(header, 4) & 0xFFFFFFFFL);
+                return true;
+            }
+            if (magic != ZSTD_MAGIC) throw new IOException("Unknown ZSTD frame magic");
+            int start = unit.size;
+            unit.write(header, 0, 4);
+            readFully(header, 0, 1);
+            int descriptor = header[0] & 0xFF;
+            boolean singleSegment = (descriptor & 0x20) != 0;
+            int contentSizeFlag = descriptor >>> 6;
+            int contentSizeOffset = 1 + (singleSegment ? 0 : 1) + new int[]{0, 1, 2, 4}[descriptor & 3];
+            int contentSizeLength = contentSizeFlag == 0 ? (singleSegment ? 1 : 0) : 1 << contentSizeFlag;
+            readFully(header, 1, contentSizeOffset + contentSizeLength - 1);
+            unit.write(header, 0, contentSizeOffset + contentSizeLength);
+            long contentSize = contentSizeLength == 0 ? -1 : 0;
+            for (int i = contentSizeLength - 1; i >= 0; i--)
+                contentSize = contentSize << 8 | (header[contentSizeOffset + i] & 0xFF);
+            if (contentSizeLength == 2) contentSize += 256;
+            boolean last;
+            do {
+                readFully(header, 0, 3);
+                int block = (header[0] & 0xFF) | (header[1] & 0xFF) << 8 | (header[2] & 0xFF) << 16;
+                last = (block & 1) != 0;
+                int type = (block >>> 1) & 3;
+                int size = block >>> 3;
+                if (type == 3 || size > ZSTD_MAX_BLOCK_SIZE) throw new IOException("Malformed ZSTD block header");
+                unit.write(header, 0, 3);
+                unit.transferFrom(in, type == 1 ? 1 : size);
+                if (unit.size - start > maxFrameSize) return fallBack(start);
+            } while (!last);
+            if ((descriptor & 4) != 0) unit.transferFrom(in, 4);
+            unit.addContentSize(contentSize);
+            return true;
+        }
+
+        /**
+         * Appends the next gzip member to the unit if it records its size.
+         *
+         * @return whether the input may hold more members
+         */
+        private boolean scanMember() throws IOException {
+            int n = in.readNBytes(header, 0, 12);
+            if (n == 0) return false;
+            int start = unit.size;
+            unit.write(header, 0, n);
+            if (n < 12 || (header[0] & 0xFF) != 0x1F || (header[1] & 0xFF) != 0x8B || (header[3] & GZIP_FEXTRA) == 0)
+                return fallBack(start);
+            int extraLength = (header[10] & 0xFF) | (header[11] & 0xFF) << 8;
+            byte[] extra = in.readNBytes(extraLength);
+            unit.write(extra, 0, extra.length);
+            if (extra.length < extraLength) return fallBack(start);
+            int memberSize = -1;
+            for (int i = 0; i + 4 <= extraLength; ) {
+                int fieldLength = (extra[i + 2] & 0xFF) | (extra[i + 3] & 0xFF) << 8;
+                if (extra[i] == 'B' && extra[i + 1] == 'C' && fieldLength == 2 && i + 6 <= extraLength) {
+                    memberSize = ((extra[i + 4] & 0xFF) | (extra[i + 5] & 0xFF) << 8) + 1;
+                    break;
+                }
+                i += 4 + fieldLength;
+            }
+            int remaining = memberSize - 12 - extraLength;
+            if (memberSize < 0 || remaining < 8) return fallBack(start);
+            unit.transferFrom(in, remaining);
+            // A BGZF member holds at most 64 KiB, so its ISIZE trailer is the exact content size.
+            unit.addContentSize(intLE(unit.data, unit.size - 4) & 0xFFFFFFFFL);
+            return true;
+        }
+
+        /**
+         * Dispatches the frames before {@code start} and decodes everything from there on sequentially.
+         */
+        private boolean fallBack(int start) throws IOException {
+            InputStream rest = new SequenceInputStream(new ByteArrayInputStream(unit.data, start, unit.size - start), in);
+            if (start > 0) {
+                // The content size only covers the frames before start, which the worker reads from the shared array.
+                unit.size = start;
+                submit(unit);
+            }
+            unit = new Unit();
+            sequential = gzip ? BaseCompress.GZIP.createDecompressStream(rest) : ZstdCompress.getInstance().createDecompressStream(rest);
+            return false;
+        }
+
+        private void readFully(byte[] b, int off, int len) throws IOException {
+            if (in.readNBytes(b, off, len) != len) throw new EOFException("Unexpected end of compressed stream");
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) throw new IOException("Stream closed");
+        }
+    }
+
+    private static int intLE(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Configures a {@link ParallelDecompress} decompressor.
+     */
+    public static final class Builder {
+        private Executor executor = ForkJoinPool.commonPool();
+        private int maxPendingUnits = Runtime.getRuntime().availableProcessors() * 2;
+        private int maxFrameSize = 64 * 1024 * 1024;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the executor units are decompressed on; defaults to the common fork-join pool.
+         *
+         * @param executor the executor
+         * @return this builder
+         */
+        public Builder executor(@NotNull Executor executor) {
+            Validate.notNull(executor, "Executor must not be null");
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Sets how many units may be decompressing or waiting to be read at once, the size of the reorder
+         * buffer. Defaults to twice the number of available processors.
+         *
+         * @param maxPendingUnits the maximum number of pending units
+         * @return this builder
+         */
+        public Builder maxPendingUnits(@Range(from = 1, to = Integer.MAX_VALUE) int maxPendingUnits) {
+            if (maxPendingUnits < 1) throw new IllegalArgumentException("maxPendingUnits must be positive");
+            this.maxPendingUnits = maxPendingUnits;
+            return this;
+        }
+
+        /**
+         * Sets the largest compressed frame that is decoded in memory; larger frames, and everything after them,
+         * are decoded sequentially. Defaults to 64 MiB.
+         *
+         * @param maxFrameSize the maximum frame size in bytes
+         * @return this builder
+         */
+        public Builder maxFrameSize(@Range(from = UNIT_SIZE, to = Integer.MAX_VALUE) int maxFrameSize) {
+            if (maxFrameSize < UNIT_SIZE) throw new IllegalArgumentException("maxFrameSize must be at least 1 MiB");
+            this.maxFrameSize = maxFrameSize;
+            return this;
+        }
+
+        /**
+         * Creates the decompressor.
+         *
+         * @return the configured decompressor
+         */
+        public ParallelDecompress build() {
+            return new ParallelDecompress(this);
+        }
+    }
+}
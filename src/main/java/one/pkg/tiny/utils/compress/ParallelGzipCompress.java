@@ -0,0 +1,304 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Range;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip codec that compresses blocks of the input concurrently, in the manner of pigz.
+ * <p>
+ * The input is split into fixed-size blocks. Each block is deflated on the executor with the last 32 KiB
+ * of the previous block as its preset dictionary, so matches across block boundaries are not lost, and
+ * ends with a sync flush so that the raw deflate outputs can be concatenated. The result is a single
+ * standard gzip member that {@link java.util.zip.GZIPInputStream} and every other gzip reader accept;
+ * decompression is sequential and delegated to {@link BaseCompress#GZIP}.
+ * <p>
+ * The output is slightly larger than that of {@link BaseCompress#GZIP}, by a few bytes per block.
+ * The CRC is computed on the writing thread, which is not a bottleneck as it runs at memory speed.
+ */
+public final class ParallelGzipCompress implements ICompress {
+    /**
+     * The default block size, 128 KiB, which is also the pigz default.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final ICompress INSTANCE = builder().build();
+
+    private final int level;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+    private final Executor executor;
+
+    private ParallelGzipCompress(Builder builder) {
+        this.level = builder.level;
+        this.blockSize = builder.blockSize;
+        this.maxPendingBlocks = builder.maxPendingBlocks;
+        this.executor = builder.executor;
+    }
+
+    /**
+     * Returns a codec with the default level and block size that compresses on the common fork-join pool.
+     *
+     * @return the shared codec
+     */
+    public static ICompress getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a builder for a configured codec.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public InputStream createDecompressStream(InputStream is) throws IOException {
+        return BaseCompress.GZIP.createDecompressStream(is);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned stream is not thread-safe. Closing it waits for all pending blocks and closes {@code os}.
+     */
+    @Override
+    public OutputStream createCompressStream(OutputStream os) throws IOException {
+        return new BlockOutputStream(os);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Equal to the block size, so that every write fills a whole block.
+     */
+    @Override
+    public int getBufferSize() {
+        return blockSize;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".gz";
+    }
+
+    /**
+     * Deflates one block into a byte-aligned raw deflate fragment; the last block finishes the stream.
+     */
+    private byte[] deflate(byte[] data, int length, byte[] dictionary, boolean last) {
+        ZlibPool pool = ZlibPool.getDefault();
+        Deflater deflater = pool.acquireDeflater(level, true);
+        try {
+            if (dictionary != null) deflater.setDictionary(dictionary);
+            deflater.setInput(data, 0, length);
+            byte[] output = new byte[length + (length >>> 3) + 64];
+            int size = 0;
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (size == output.length) output = Arrays.copyOf(output, output.length * 2);
+                    size += deflater.deflate(output, size, output.length - size);
+                }
+            } else {
+                // A sync flush ends on a byte boundary; a full buffer means there may be more output.
+                int n;
+                do {
+                    if (size == output.length) output = Arrays.copyOf(output, output.length * 2);
+                    n = deflater.deflate(output, size, output.length - size, Deflater.SYNC_FLUSH);
+                    size += n;
+                } while (size == output.length);
+            }
+            return size == output.length ? output : Arrays.copyOf(output, size);
+        } finally {
+            pool.release(deflater);
+            BufferPool.of(blockSize).release(data);
+        }
+    }
+
+    private final class BlockOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final BufferPool pool = BufferPool.of(blockSize);
+        private final ArrayDeque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+        private final CRC32 crc = new CRC32();
+        private byte[] block;
+        private int count;
+        private long size;
+        private byte[] dictionary;
+        private boolean closed;
+
+        BlockOutputStream(OutputStream out) throws IOException {
+            this.out = out;
+            out.write(Zlib.GZIP_HEADER);
+            this.block = pool.acquire();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            block[count++] = (byte) b;
+            if (count == blockSize) submit(false);
+        }
+
+        @Override
+        public void write(byte @NotNull [] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            ensureOpen();
+            while (len > 0) {
+                int n = Math.min(len, blockSize - count);
+                System.arraycopy(b, off, block, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                if (count == blockSize) submit(false);
+            }
+        }
+
+        /**
+         * Writes the blocks that have already been compressed and flushes the underlying stream.
+         * Like {@link java.util.zip.GZIPOutputStream} without sync flush, buffered input is not forced out.
+         */
+        @Override
+        public void flush() throws IOException {
+            ensureOpen();
+            while (!pending.isEmpty() && pending.peek().isDone()) writeNext();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                submit(true);
+                while (!pending.isEmpty()) writeNext();
+                long value = crc.getValue();
+                out.write(new byte[]{
+                        (byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24),
+                        (byte) size, (byte) (size >>> 8), (byte) (size >>> 16), (byte) (size >>> 24)});
+            } finally {
+                for (CompletableFuture<byte[]> future : pending) future.cancel(false);
+                pending.clear();
+                out.close();
+            }
+        }
+
+        private void submit(boolean last) throws IOException {
+            byte[] data = block;
+            int length = count;
+            byte[] previous = dictionary;
+            crc.update(data, 0, length);
+            size += length;
+            if (!last) dictionary = Arrays.copyOfRange(data, length - DICTIONARY_SIZE, length);
+            block = last ? null : pool.acquire();
+            count = 0;
+            try {
+                pending.add(CompletableFuture.supplyAsync(() -> deflate(data, length, previous, last), executor));
+            } catch (RejectedExecutionException e) {
+                throw new IOException("Parallel GZIP compression rejected by executor", e);
+            }
+            while (pending.size() > maxPendingBlocks) writeNext();
+        }
+
+        private void writeNext() throws IOException {
+            byte[] compressed;
+            try {
+                compressed = pending.poll().join();
+            } catch (CompletionException e) {
+                throw new IOException("Parallel GZIP compression failed", e.getCause());
+            }
+            out.write(compressed);
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Configures a {@link ParallelGzipCompress} codec.
+     */
+    public static final class Builder {
+        private int level = Deflater.DEFAULT_COMPRESSION;
+        private int blockSize = DEFAULT_BLOCK_SIZE;
+        private int maxPendingBlocks = Runtime.getRuntime().availableProcessors() * 2;
+        private Executor executor = ForkJoinPool.commonPool();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the deflate level, from {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION},
+         * or {@link Deflater#DEFAULT_COMPRESSION}.
+         *
+         * @param level the level
+         * @return this builder
+         */
+        public Builder level(@Range(from = -1, to = 9) int level) {
+            if (level < -1 || level > 9) throw new IllegalArgumentException("level must be between -1 and 9");
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * Sets the size of the independently compressed blocks; at least 32 KiB, the deflate window.
+         *
+         * @param blockSize the block size in bytes
+         * @return this builder
+         */
+        public Builder blockSize(@Range(from = DICTIONARY_SIZE, to = Integer.MAX_VALUE) int blockSize) {
+            if (blockSize < DICTIONARY_SIZE) throw new IllegalArgumentException("blockSize must be at least 32 KiB");
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * Sets how many blocks may be compressing or waiting to be written at once, which bounds memory use
+         * to about twice this many blocks. Defaults to twice the number of available processors.
+         *
+         * @param maxPendingBlocks the maximum number of pending blocks
+         * @return this builder
+         */
+        public Builder maxPendingBlocks(@Range(from = 1, to = Integer.MAX_VALUE) int maxPendingBlocks) {
+            if (maxPendingBlocks < 1) throw new IllegalArgumentException("maxPendingBlocks must be positive");
+            this.maxPendingBlocks = maxPendingBlocks;
+            return this;
+        }
+
+        /**
+         * Sets the executor the blocks are compressed on; defaults to the common fork-join pool.
+         *
+         * @param executor the executor
+         * @return this builder
+         */
+        public Builder executor(@NotNull Executor executor) {
+            Validate.notNull(executor, "Executor must not be null");
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Creates the codec.
+         *
+         * @return the configured codec
+         */
+        public ICompress build() {
+            return new ParallelGzipCompress(this);
+        }
+    }
+}
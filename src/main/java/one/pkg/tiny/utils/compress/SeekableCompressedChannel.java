@@ -0,0 +1,228 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only channel over the uncompressed content of a container written by
+ * {@link SeekableCompressedOutputStream}.
+ * <p>
+ * Positions and sizes refer to the uncompressed data. A read decompresses only the blocks covering the
+ * requested range; the most recently decompressed block is kept, so sequential reads decompress every block
+ * once. The channel must be opened with the codec the container was written with.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * try (SeekableCompressedChannel channel = SeekableCompressedChannel.open(regionFile, ZstdCompress.getInstance())) {
+ *     ByteBuffer chunk = ByteBuffer.allocate(length);
+ *     channel.position(offset).read(chunk);
+ * }
+ * }</pre>
+ * <p>
+ * This class is thread-safe; reads are serialized.
+ */
+public final class SeekableCompressedChannel implements SeekableByteChannel {
+    private final SeekableByteChannel channel;
+    private final ICompress codec;
+    private final long size;
+    private final int blockSize;
+    private final long[] offsets;
+    private long position;
+    private int cachedIndex = -1;
+    private byte[] cachedBlock;
+
+    private SeekableCompressedChannel(SeekableByteChannel channel, ICompress codec) throws IOException {
+        this.channel = channel;
+        this.codec = codec;
+        long length = channel.size();
+        if (length < SeekableCompressedOutputStream.FOOTER_SIZE) throw new IOException("Not a seekable compressed container");
+        ByteBuffer footer = readFully(length - SeekableCompressedOutputStream.FOOTER_SIZE, SeekableCompressedOutputStream.FOOTER_SIZE);
+        this.size = footer.getLong();
+        this.blockSize = footer.getInt();
+        int blocks = footer.getInt();
+        if (footer.getInt() != SeekableCompressedOutputStream.MAGIC) throw new IOException("Not a seekable compressed container");
+        long indexStart = length - SeekableCompressedOutputStream.FOOTER_SIZE - 4L * blocks;
+        if (blockSize < 1 || blocks < 0 || indexStart < 0 || size < 0
+                || (size + blockSize - 1) / blockSize != blocks)
+            throw new IOException("Corrupt seekable compressed container footer");
+        ByteBuffer index = readFully(indexStart, 4 * blocks);
+        this.offsets = new long[blocks + 1];
+        for (int i = 0; i < blocks; i++) offsets[i + 1] = offsets[i] + (index.getInt() & 0xFFFFFFFFL);
+        if (offsets[blocks] != indexStart) throw new IOException("Corrupt seekable compressed container index");
+    }
+
+    /**
+     * Opens a container file.
+     *
+     * @param file  the container
+     * @param codec the codec the container was written with
+     * @return the channel
+     * @throws IOException if the file cannot be read or is not a valid container
+     */
+    public static SeekableCompressedChannel open(@NotNull Path file, @NotNull ICompress codec) throws IOException {
+        Validate.notNull(file, "File must not be null");
+        return open(FileChannel.open(file, StandardOpenOption.READ), codec);
+    }
+
+    /**
+     * Opens a container held by a channel. The returned channel takes ownership of {@code channel} and closes
+     * it when closed or when opening fails.
+     *
+     * @param channel the container
+     * @param codec   the codec the container was written with
+     * @return the channel
+     * @throws IOException if the channel cannot be read or does not hold a valid container
+     */
+    public static SeekableCompressedChannel open(@NotNull SeekableByteChannel channel, @NotNull ICompress codec) throws IOException {
+        Validate.notNull(channel, "Channel must not be null");
+        Validate.notNull(codec, "Codec must not be null");
+        try {
+            return new SeekableCompressedChannel(channel, codec);
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads uncompressed bytes starting at the current position, filling {@code dst} as far as the content allows.
+     */
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= size) return dst.hasRemaining() ? -1 : 0;
+        int start = dst.position();
+        while (dst.hasRemaining() && position < size) {
+            int index = (int) (position / blockSize);
+            byte[] block = block(index);
+            int offset = (int) (position - (long) index * blockSize);
+            int n = Math.min(dst.remaining(), block.length - offset);
+            dst.put(block, offset, n);
+            position += n;
+        }
+        return dst.position() - start;
+    }
+
+    /**
+     * Reads uncompressed bytes starting at the given position without changing the channel's position.
+     *
+     * @param dst      the buffer to fill
+     * @param position the uncompressed position to read from
+     * @return the number of bytes read, or {@code -1} if {@code position} is at or beyond the end
+     * @throws IOException if the container cannot be read
+     */
+    public synchronized int read(ByteBuffer dst, long position) throws IOException {
+        if (position < 0) throw new IllegalArgumentException("position must not be negative");
+        long previous = this.position;
+        this.position = position;
+        try {
+            return read(dst);
+        } finally {
+            this.position = previous;
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableCompressedChannel position(long newPosition) throws IOException {
+        if (newPosition < 0) throw new IllegalArgumentException("position must not be negative");
+        ensureOpen();
+        position = newPosition;
+        return this;
+    }
+
+    /**
+     * Returns the uncompressed size of the content.
+     */
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    /**
+     * Returns the uncompressed size of each block, except possibly the last.
+     *
+     * @return the block size
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Returns the number of blocks in the container.
+     *
+     * @return the block count
+     */
+    public int getBlockCount() {
+        return offsets.length - 1;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        cachedBlock = null;
+        cachedIndex = -1;
+        channel.close();
+    }
+
+    private byte[] block(int index) throws IOException {
+        if (index == cachedIndex) return cachedBlock;
+        long compressedSize = offsets[index + 1] - offsets[index];
+        if (compressedSize > Integer.MAX_VALUE) throw new IOException("Corrupt seekable compressed container index");
+        ByteBuffer compressed = readFully(offsets[index], (int) compressedSize);
+        byte[] block = codec.decompress(compressed.array());
+        long expected = Math.min(blockSize, size - (long) index * blockSize);
+        if (block.length != expected)
+            throw new IOException("Corrupt block " + index + ": expected " + expected + " bytes, got " + block.length);
+        cachedIndex = index;
+        cachedBlock = block;
+        return block;
+    }
+
+    private ByteBuffer readFully(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        channel.position(offset);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new EOFException("Unexpected end of seekable compressed container");
+        }
+        return buffer.flip();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!channel.isOpen()) throw new ClosedChannelException();
+    }
+}
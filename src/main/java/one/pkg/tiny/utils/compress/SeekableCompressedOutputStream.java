@@ -0,0 +1,134 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Range;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Writes the seekable container read by {@link SeekableCompressedChannel}.
+ * <p>
+ * The input is cut into blocks of a fixed uncompressed size, each compressed independently with the given
+ * codec and written back to back. Closing the stream appends the block index and a fixed-size footer:
+ * <pre>
+ * block 0 .. block n-1      independently compressed blocks
+ * u32 x n                   compressed size of each block
+ * u64                       total uncompressed size
+ * u32                       uncompressed block size
+ * u32                       number of blocks n
+ * u32                       magic 0x54534331 ("TSC1")
+ * </pre>
+ * All integers are big-endian. Smaller blocks allow cheaper random reads at the cost of ratio; codecs with
+ * a dictionary, see {@link ZstdCompress#withDictionary(ZstdDictionary)}, make up for much of that loss.
+ * <p>
+ * This stream is not thread-safe. Closing it closes the underlying stream.
+ */
+public final class SeekableCompressedOutputStream extends OutputStream {
+    /**
+     * The default uncompressed block size, 64 KiB.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    static final int MAGIC = 0x54534331;
+    static final int FOOTER_SIZE = 20;
+
+    private final DataOutputStream out;
+    private final ICompress codec;
+    private final byte[] block;
+    private int count;
+    private int[] sizes = new int[16];
+    private int blocks;
+    private long size;
+    private boolean closed;
+
+    /**
+     * Creates a stream with the default block size.
+     *
+     * @param out   the destination
+     * @param codec the codec compressing each block
+     */
+    public SeekableCompressedOutputStream(@NotNull OutputStream out, @NotNull ICompress codec) {
+        this(out, codec, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a stream.
+     *
+     * @param out       the destination
+     * @param codec     the codec compressing each block
+     * @param blockSize the uncompressed size of each block
+     */
+    public SeekableCompressedOutputStream(@NotNull OutputStream out, @NotNull ICompress codec,
+                                          @Range(from = 1, to = Integer.MAX_VALUE) int blockSize) {
+        Validate.notNull(out, "Output stream must not be null");
+        Validate.notNull(codec, "Codec must not be null");
+        if (blockSize < 1) throw new IllegalArgumentException("blockSize must be positive");
+        this.out = new DataOutputStream(out);
+        this.codec = codec;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[count++] = (byte) b;
+        if (count == block.length) writeBlock();
+    }
+
+    @Override
+    public void write(byte @NotNull [] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == block.length) writeBlock();
+        }
+    }
+
+    /**
+     * Flushes the blocks written so far. A partially filled block is kept until it is full or the stream is
+     * closed, since flushing it early would break the fixed block size the index relies on.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (count > 0) writeBlock();
+            for (int i = 0; i < blocks; i++) out.writeInt(sizes[i]);
+            out.writeLong(size);
+            out.writeInt(block.length);
+            out.writeInt(blocks);
+            out.writeInt(MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        byte[] compressed = codec.compress(count == block.length ? block : Arrays.copyOf(block, count));
+        out.write(compressed);
+        if (blocks == sizes.length) sizes = Arrays.copyOf(sizes, blocks * 2);
+        sizes[blocks++] = compressed.length;
+        size += count;
+        count = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Stream closed");
+    }
+}
@@ -0,0 +1,304 @@
+package one.pkg.tiny.utils.compress;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.*;
+
+/**
+ * {@link ByteBuffer} based zlib and gzip coding on top of {@link Deflater#setInput(ByteBuffer)} and
+ * {@link Inflater#setInput(ByteBuffer)}, which let zlib read and write direct buffers without heap copies.
+ * <p>
+ * The gzip framing matches {@link GZIPOutputStream} on the way out and accepts everything
+ * {@link GZIPInputStream} accepts on the way in, including concatenated members.
+ * <p>
+ * The nested streams do the same for {@link InputStream}s and {@link OutputStream}s on top of zlib objects
+ * borrowed from a {@link ZlibPool}, which are handed back when the stream is closed; the JDK gzip streams
+ * always allocate their own.
+ */
+final class Zlib {
+    static final int GZIP_MAGIC = 0x8b1f;
+    static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private Zlib() {
+    }
+
+    /**
+     * Compresses the remaining bytes of {@code src} with the given deflater, which must be in its initial state.
+     */
+    static int deflate(Deflater deflater, ByteBuffer src, ByteBuffer dst) throws IOException {
+        int start = dst.position();
+        deflater.setInput(src);
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflater.deflate(dst);
+            if (!deflater.finished() && !dst.hasRemaining()) throw ByteBuffers.overflow();
+        }
+        return dst.position() - start;
+    }
+
+    /**
+     * Compresses the remaining bytes of {@code src} as a single gzip member.
+     * The deflater must be in its initial state and created with {@code nowrap = true}.
+     */
+    static int gzip(Deflater deflater, ByteBuffer src, ByteBuffer dst) throws IOException {
+        if (dst.remaining() < GZIP_HEADER.length) throw ByteBuffers.overflow();
+        int start = dst.position();
+        CRC32 crc = new CRC32();
+        int size = src.remaining();
+        crc.update(src.duplicate());
+        dst.put(GZIP_HEADER);
+        deflate(deflater, src, dst);
+        if (dst.remaining() < 8) throw ByteBuffers.overflow();
+        ByteOrder order = dst.order();
+        dst.order(ByteOrder.LITTLE_ENDIAN).putInt((int) crc.getValue()).putInt(size).order(order);
+        return dst.position() - start;
+    }
+
+    /**
+     * Decompresses a single zlib or raw deflate stream from {@code src}, leaving any trailing bytes unread.
+     */
+    static int inflate(Inflater inflater, ByteBuffer src, ByteBuffer dst) throws IOException {
+        int start = dst.position();
+        inflater.setInput(src);
+        try {
+            while (!inflater.finished()) {
+                if (inflater.inflate(dst) > 0 || inflater.finished()) continue;
+                if (inflater.needsDictionary()) throw new ZipException("Deflate stream requires a preset dictionary");
+                if (inflater.needsInput()) throw new EOFException("Unexpected end of deflate stream");
+                if (!dst.hasRemaining()) throw ByteBuffers.overflow();
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+        return dst.position() - start;
+    }
+
+    /**
+     * Decompresses all gzip members in {@code src}. The inflater must be created with {@code nowrap = true}.
+     */
+    static int gunzip(Inflater inflater, ByteBuffer src, ByteBuffer dst) throws IOException {
+        int start = dst.position();
+        ByteOrder order = src.order();
+        src.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            do {
+                readHeader(src);
+                int memberStart = dst.position();
+                inflater.reset();
+                inflate(inflater, src, dst);
+                if (src.remaining() < 8) throw new EOFException("Unexpected end of gzip trailer");
+                CRC32 crc = new CRC32();
+                crc.update(dst.duplicate().position(memberStart).limit(dst.position()));
+                if (src.getInt() != (int) crc.getValue()) throw new ZipException("Corrupt GZIP trailer");
+                if (src.getInt() != dst.position() - memberStart) throw new ZipException("Corrupt GZIP trailer");
+            } while (src.remaining() >= 2 && (src.getShort(src.position()) & 0xFFFF) == GZIP_MAGIC);
+        } finally {
+            src.order(order);
+        }
+        return dst.position() - start;
+    }
+
+    private static void readHeader(ByteBuffer src) throws IOException {
+        if (src.remaining() < 10) throw new EOFException("Unexpected end of gzip header");
+        if ((src.getShort() & 0xFFFF) != GZIP_MAGIC) throw new ZipException("Not in GZIP format");
+        if (src.get() != Deflater.DEFLATED) throw new ZipException("Unsupported compression method");
+        int flags = src.get() & 0xFF;
+        src.position(src.position() + 6);
+        try {
+            if ((flags & FEXTRA) != 0) {
+                int extraLength = src.getShort() & 0xFFFF;
+                src.position(src.position() + extraLength);
+            }
+            if ((flags & FNAME) != 0) while (src.get() != 0) ;
+            if ((flags & FCOMMENT) != 0) while (src.get() != 0) ;
+            if ((flags & FHCRC) != 0) src.getShort();
+        } catch (RuntimeException e) {
+            throw new EOFException("Unexpected end of gzip header");
+        }
+    }
+
+    private static int readHeader(InputStream in) throws IOException {
+        if (readUShort(in) != GZIP_MAGIC) throw new ZipException("Not in GZIP format");
+        if (readUByte(in) != Deflater.DEFLATED) throw new ZipException("Unsupported compression method");
+        int flags = readUByte(in);
+        skipBytes(in, 6);
+        int n = 10;
+        if ((flags & FEXTRA) != 0) {
+            int m = readUShort(in);
+            skipBytes(in, m);
+            n += m + 2;
+        }
+        if ((flags & FNAME) != 0) do n++; while (readUByte(in) != 0);
+        if ((flags & FCOMMENT) != 0) do n++; while (readUByte(in) != 0);
+        if ((flags & FHCRC) != 0) {
+            readUShort(in);
+            n += 2;
+        }
+        return n;
+    }
+
+    private static long readUInt(InputStream in) throws IOException {
+        return readUShort(in) | (long) readUShort(in) << 16;
+    }
+
+    private static int readUShort(InputStream in) throws IOException {
+        return readUByte(in) | readUByte(in) << 8;
+    }
+
+    private static int readUByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException("Unexpected end of gzip stream");
+        return b;
+    }
+
+    private static void skipBytes(InputStream in, int n) throws IOException {
+        while (n > 0) {
+            readUByte(in);
+            n--;
+        }
+    }
+
+    /**
+     * A zlib or raw deflate output stream that returns its deflater to the pool when closed.
+     */
+    static class PooledDeflaterOutputStream extends DeflaterOutputStream {
+        private final ZlibPool pool;
+
+        PooledDeflaterOutputStream(OutputStream out, ZlibPool pool, Deflater deflater, int size) {
+            super(out, deflater, size);
+            this.pool = pool;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                pool.release(def);
+            }
+        }
+    }
+
+    /**
+     * A gzip output stream equivalent to {@link GZIPOutputStream}. The deflater must be created with
+     * {@code nowrap = true}.
+     */
+    static final class GzipOutputStream extends PooledDeflaterOutputStream {
+        private final CRC32 crc = new CRC32();
+
+        GzipOutputStream(OutputStream out, ZlibPool pool, Deflater deflater, int size) throws IOException {
+            super(out, pool, deflater, size);
+            out.write(GZIP_HEADER);
+        }
+
+        @Override
+        public void write(byte @NotNull [] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            crc.update(b, off, len);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (def.finished()) return;
+            super.finish();
+            long value = crc.getValue();
+            long size = def.getBytesRead();
+            out.write(new byte[]{
+                    (byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24),
+                    (byte) size, (byte) (size >>> 8), (byte) (size >>> 16), (byte) (size >>> 24)});
+        }
+    }
+
+    /**
+     * A zlib or raw deflate input stream that returns its inflater to the pool when closed.
+     */
+    static class PooledInflaterInputStream extends InflaterInputStream {
+        private final ZlibPool pool;
+
+        PooledInflaterInputStream(InputStream in, ZlibPool pool, Inflater inflater, int size) {
+            super(in, inflater, size);
+            this.pool = pool;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                pool.release(inf);
+            }
+        }
+    }
+
+    /**
+     * A gzip input stream equivalent to {@link GZIPInputStream}, including concatenated members. The inflater
+     * must be created with {@code nowrap = true}.
+     */
+    static final class GzipInputStream extends PooledInflaterInputStream {
+        private final CRC32 crc = new CRC32();
+        private boolean eos;
+
+        GzipInputStream(InputStream in, ZlibPool pool, Inflater inflater, int size) throws IOException {
+            super(in, pool, inflater, size);
+            try {
+                readHeader(in);
+            } catch (IOException e) {
+                pool.release(inflater);
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int length) throws IOException {
+            if (eos) return -1;
+            int n = super.read(b, off, length);
+            if (n == -1) {
+                if (readTrailer()) eos = true;
+                else return read(b, off, length);
+            } else {
+                crc.update(b, off, n);
+            }
+            return n;
+        }
+
+        /**
+         * Checks the trailer of the current member and starts the next one, if any.
+         *
+         * @return whether the end of the stream was reached
+         */
+        private boolean readTrailer() throws IOException {
+            InputStream in = this.in;
+            int n = inf.getRemaining();
+            if (n > 0) {
+                in = new SequenceInputStream(new ByteArrayInputStream(buf, len - n, n), new FilterInputStream(in) {
+                    @Override
+                    public void close() {
+                    }
+                });
+            }
+            if (readUInt(in) != crc.getValue() || readUInt(in) != (inf.getBytesWritten() & 0xFFFFFFFFL))
+                throw new ZipException("Corrupt GZIP trailer");
+            // Like GZIPInputStream, only look for another member if more data is at hand; trailing garbage is ignored.
+            if (this.in.available() > 0 || n > 26) {
+                int m = 8;
+                try {
+                    m += readHeader(in);
+                } catch (IOException e) {
+                    return true;
+                }
+                inf.reset();
+                crc.reset();
+                if (n > m) inf.setInput(buf, len - n + m, n - m);
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.IdleQueue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Range;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A lock-free pool of {@link Deflater} and {@link Inflater} instances.
+ * <p>
+ * Every zlib object owns a few hundred kilobytes of native memory that is only released by {@code end()} or,
+ * failing that, by a cleaner after garbage collection. Creating one per stream therefore causes native memory
+ * spikes under load. Pooled objects are {@code reset()} on release and handed out again; at most
+ * {@code maxIdle} idle objects of each kind are retained in an {@link IdleQueue} and any surplus is ended
+ * immediately. Deflaters are
+ * kept apart by level, strategy and wrapping, so a reused deflater never has to change its parameters;
+ * inflaters only by wrapping.
+ * <p>
+ * Objects must be obtained with one of the {@code acquire} methods and handed back with {@code release}
+ * instead of being ended. {@link BaseCompress}, {@link DeflateCompress} and {@link ParallelGzipCompress}
+ * use the {@linkplain #getDefault() default pool}, whose counters can be exported as metrics.
+ */
+public final class ZlibPool {
+    private static final ZlibPool DEFAULT = new ZlibPool(Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final int LEVELS = 11;
+    private static final int STRATEGIES = 3;
+
+    @SuppressWarnings("unchecked")
+    private final IdleQueue<PooledDeflater>[] deflaters = (IdleQueue<PooledDeflater>[]) new IdleQueue<?>[LEVELS * STRATEGIES * 2];
+    private final IdleQueue<PooledInflater> inflaters;
+    private final IdleQueue<PooledInflater> rawInflaters;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicInteger borrowed = new AtomicInteger();
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxIdle the maximum number of idle objects retained per kind
+     */
+    public ZlibPool(@Range(from = 0, to = Integer.MAX_VALUE) int maxIdle) {
+        if (maxIdle < 0) throw new IllegalArgumentException("maxIdle must not be negative");
+        for (int i = 0; i < deflaters.length; i++) deflaters[i] = new IdleQueue<>(maxIdle);
+        this.inflaters = new IdleQueue<>(maxIdle);
+        this.rawInflaters = new IdleQueue<>(maxIdle);
+    }
+
+    /**
+     * Returns the shared pool, retaining up to twice the number of available processors idle objects per kind.
+     *
+     * @return the shared pool
+     */
+    public static ZlibPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Takes a deflater with the default strategy from the pool, or creates one.
+     *
+     * @param level  the compression level
+     * @param nowrap whether to produce raw deflate data without zlib header and checksum, as used by gzip
+     * @return a deflater in its initial state
+     */
+    public Deflater acquireDeflater(@Range(from = -1, to = 9) int level, boolean nowrap) {
+        return acquireDeflater(level, Deflater.DEFAULT_STRATEGY, nowrap);
+    }
+
+    /**
+     * Takes a deflater from the pool, or creates one.
+     *
+     * @param level    the compression level
+     * @param strategy the compression strategy
+     * @param nowrap   whether to produce raw deflate data without zlib header and checksum, as used by gzip
+     * @return a deflater in its initial state
+     * @throws IllegalArgumentException if the level or strategy is invalid
+     */
+    public Deflater acquireDeflater(@Range(from = -1, to = 9) int level, int strategy, boolean nowrap) {
+        if (level < -1 || level > 9) throw new IllegalArgumentException("level must be between -1 and 9");
+        if (strategy != Deflater.DEFAULT_STRATEGY && strategy != Deflater.FILTERED && strategy != Deflater.HUFFMAN_ONLY)
+            throw new IllegalArgumentException("Unknown deflater strategy: " + strategy);
+        PooledDeflater deflater = deflaters[index(level, strategy, nowrap)].poll();
+        if (deflater == null) {
+            deflater = new PooledDeflater(level, strategy, nowrap);
+            created.incrementAndGet();
+        } else {
+            reused.incrementAndGet();
+            deflater.released = false;
+        }
+        borrowed.incrementAndGet();
+        return deflater;
+    }
+
+    /**
+     * Takes an inflater from the pool, or creates one.
+     *
+     * @param nowrap whether to read raw deflate data without zlib header and checksum, as used by gzip
+     * @return an inflater in its initial state
+     */
+    public Inflater acquireInflater(boolean nowrap) {
+        PooledInflater inflater = (nowrap ? rawInflaters : inflaters).poll();
+        if (inflater == null) {
+            inflater = new PooledInflater(nowrap);
+            created.incrementAndGet();
+        } else {
+            reused.incrementAndGet();
+            inflater.released = false;
+        }
+        borrowed.incrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * Resets a deflater and returns it to the pool. Deflaters that did not come from a pool or whose level or
+     * strategy was changed are ended; releasing a deflater twice has no effect.
+     *
+     * @param deflater a deflater previously obtained from {@link #acquireDeflater(int, int, boolean)}
+     */
+    public void release(@NotNull Deflater deflater) {
+        if (!(deflater instanceof PooledDeflater)) {
+            deflater.end();
+            return;
+        }
+        PooledDeflater pooled = (PooledDeflater) deflater;
+        if (pooled.released) return;
+        pooled.released = true;
+        borrowed.decrementAndGet();
+        if (pooled.reconfigured) {
+            pooled.end();
+            discarded.incrementAndGet();
+            return;
+        }
+        try {
+            pooled.reset();
+        } catch (RuntimeException e) {
+            // ended by the caller
+            discarded.incrementAndGet();
+            return;
+        }
+        if (!deflaters[index(pooled.level, pooled.strategy, pooled.nowrap)].offer(pooled)) {
+            pooled.end();
+            discarded.incrementAndGet();
+        }
+    }
+
+    /**
+     * Resets an inflater and returns it to the pool. Inflaters that did not come from a pool are ended;
+     * releasing an inflater twice has no effect.
+     *
+     * @param inflater an inflater previously obtained from {@link #acquireInflater(boolean)}
+     */
+    public void release(@NotNull Inflater inflater) {
+        if (!(inflater instanceof PooledInflater)) {
+            inflater.end();
+            return;
+        }
+        PooledInflater pooled = (PooledInflater) inflater;
+        if (pooled.released) return;
+        pooled.released = true;
+        borrowed.decrementAndGet();
+        try {
+            pooled.reset();
+        } catch (RuntimeException e) {
+            discarded.incrementAndGet();
+            return;
+        }
+        if (!(pooled.nowrap ? rawInflaters : inflaters).offer(pooled)) {
+            pooled.end();
+            discarded.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of zlib objects created because the pool was empty.
+     *
+     * @return the number of created objects
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Returns the number of acquisitions served from the pool.
+     *
+     * @return the number of reuses
+     */
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    /**
+     * Returns the number of released objects that were ended because the pool was full.
+     *
+     * @return the number of discarded objects
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    /**
+     * Returns the number of objects currently acquired and not yet released; a steadily growing value
+     * indicates a leak.
+     *
+     * @return the number of borrowed objects
+     */
+    public int getBorrowedCount() {
+        return borrowed.get();
+    }
+
+    /**
+     * Returns the number of idle objects currently held by the pool.
+     *
+     * @return the number of idle objects
+     */
+    public int getIdleCount() {
+        int count = inflaters.size() + rawInflaters.size();
+        for (IdleQueue<PooledDeflater> idle : deflaters) count += idle.size();
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "ZlibPool{created=" + getCreatedCount() + ", reused=" + getReusedCount() + ", discarded=" + getDiscardedCount()
+                + ", borrowed=" + getBorrowedCount() + ", idle=" + getIdleCount() + '}';
+    }
+
+    private static int index(int level, int strategy, boolean nowrap) {
+        return ((level + 1) * STRATEGIES + strategy) * 2 + (nowrap ? 1 : 0);
+    }
+
+    /**
+     * Remembers its wrapping mode, level and strategy, which {@link Deflater} does not expose.
+     * Parameters changed by the borrower keep it out of the pool, as zlib applies them lazily on the next
+     * {@code deflate} call, where they would interfere with a preset dictionary.
+     */
+    private static final class PooledDeflater extends Deflater {
+        final int level;
+        final int strategy;
+        final boolean nowrap;
+        boolean released;
+        boolean reconfigured;
+
+        PooledDeflater(int level, int strategy, boolean nowrap) {
+            super(level, nowrap);
+            if (strategy != DEFAULT_STRATEGY) super.setStrategy(strategy);
+            this.level = level;
+            this.strategy = strategy;
+            this.nowrap = nowrap;
+        }
+
+        @Override
+        public void setLevel(int level) {
+            super.setLevel(level);
+            reconfigured |= level != this.level;
+        }
+
+        @Override
+        public void setStrategy(int strategy) {
+            super.setStrategy(strategy);
+            reconfigured |= strategy != this.strategy;
+        }
+    }
+
+    private static final class PooledInflater extends Inflater {
+        final boolean nowrap;
+        boolean released;
+
+        PooledInflater(boolean nowrap) {
+            super(nowrap);
+            this.nowrap = nowrap;
+        }
+    }
+}
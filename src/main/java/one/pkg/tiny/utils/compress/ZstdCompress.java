@@ -1,41 +1,596 @@
 package one.pkg.tiny.utils.compress;
 
+import one.pkg.tiny.utils.IdleQueue;
 import one.pkg.tiny.utils.Reflect;
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Zstandard compression backed by {@code zstd-jni}.
+ * <p>
+ * The one-shot {@code byte[]} and {@link ByteBuffer} methods borrow native compression and decompression
+ * contexts from a bounded pool and return them after the call, so small messages do not pay for allocating
+ * and initializing a fresh zstd context each time, and short-lived or virtual threads do not leave contexts
+ * behind. Codecs without a dictionary share the pool with every codec of the same configuration;
+ * {@link #trimIdleContexts()} ends the idle contexts of all pools. The stream methods create a new native
+ * stream per call.
+ * <p>
+ * {@link #withDictionary(ZstdDictionary)} creates instances bound to a {@link ZstdDictionary}; the dictionary
+ * is digested once per instance and shared by all threads. {@link #builder()} configures the level, window,
+ * long-distance matching and worker threads; {@link #getInstance()} keeps the library defaults.
+ * <p>
+ * With worker threads, see {@link #multiThreaded()}, zstd splits the input into jobs that are compressed
+ * concurrently by native threads while the caller keeps feeding input; the output is a regular single frame.
+ * This pays off for inputs of several megabytes, such as backups and patches, and mostly applies to
+ * {@link #compress(InputStream, OutputStream)}. Contexts with workers are created and ended per call rather
+ * than pooled, so their native threads do not outlive the call.
+ */
 public class ZstdCompress implements ICompress {
-    private static final ICompress INSTANCE = new ZstdCompress();
-    private final boolean hasDependency = Reflect.hasClass("com.github.luben.zstd.ZstdDecompressCtx");
+    private static final int DEFAULT_LEVEL = 3;
+    /**
+     * The largest window zstd decoders accept without being told otherwise, 128 MiB.
+     */
+    private static final int DEFAULT_WINDOW_LOG_MAX = 27;
+    private static final ICompress INSTANCE = builder().build();
+    /**
+     * Every context pool in use; a dictionary-bound pool is dropped together with its codec.
+     */
+    private static final Set<Contexts> POOLS = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    /**
+     * Probes a class whose initializer, unlike that of the context classes, does not load the native library.
+     */
+    private final boolean hasDependency = Reflect.hasClass("com.github.luben.zstd.util.Native");
+    private final int level;
+    private final int windowLog;
+    private final boolean longDistanceMatching;
+    private final int workers;
+    private final int jobSize;
+    private final int overlapLog;
+    private final boolean checksum;
+    private final @Nullable ZstdDictionary dictionary;
+    private volatile Contexts contexts;
 
-    private ZstdCompress() {
+    private ZstdCompress(Builder builder) {
+        this.level = builder.level;
+        this.windowLog = builder.windowLog;
+        this.longDistanceMatching = builder.longDistanceMatching;
+        this.workers = builder.workers;
+        this.jobSize = builder.jobSize;
+        this.overlapLog = builder.overlapLog;
+        this.checksum = builder.checksum;
+        this.dictionary = builder.dictionary;
     }
 
     public static ICompress getInstance() {
         return INSTANCE;
     }
 
+    /**
+     * Returns a codec that compresses and decompresses with the given dictionary at the default level.
+     *
+     * @param dictionary the dictionary
+     * @return the codec
+     */
+    public static ICompress withDictionary(@NotNull ZstdDictionary dictionary) {
+        return withDictionary(dictionary, DEFAULT_LEVEL);
+    }
+
+    /**
+     * Returns a codec that compresses and decompresses with the given dictionary.
+     * <p>
+     * Create one instance per dictionary and keep it: the dictionary is digested on first use,
+     * which costs considerably more than compressing a small record.
+     *
+     * @param dictionary the dictionary
+     * @param level      the compression level
+     * @return the codec
+     */
+    public static ICompress withDictionary(@NotNull ZstdDictionary dictionary, int level) {
+        Validate.notNull(dictionary, "Dictionary must not be null");
+        return builder().level(level).dictionary(dictionary).build();
+    }
+
+    /**
+     * Returns a codec at the default level that compresses with one native worker per available processor.
+     *
+     * @return the codec
+     */
+    public static ICompress multiThreaded() {
+        return multiThreaded(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns a codec at the default level that compresses with the given number of native workers.
+     *
+     * @param workers the number of workers
+     * @return the codec
+     */
+    public static ICompress multiThreaded(@Range(from = 1, to = 200) int workers) {
+        if (workers < 1) throw new IllegalArgumentException("workers must be positive");
+        return builder().workers(workers).build();
+    }
+
+    /**
+     * Returns a builder for a configured codec.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
     protected void checkDependencyPresent(String operation) throws IOException {
         if (!hasDependency)
             throw new IOException(operation + " requires the 'com.github.luben:zstd-jni' library to be present on the classpath");
+        if (!Native.AVAILABLE)
+            throw new IOException(operation + " requires the zstd-jni native library for this platform", Native.CAUSE);
     }
 
     @Override
     public InputStream createDecompressStream(InputStream is) throws IOException {
         checkDependencyPresent("ZSTD decompression");
-        return new com.github.luben.zstd.ZstdInputStream(is);
+        return contexts().createDecompressStream(is);
     }
 
     @Override
     public OutputStream createCompressStream(OutputStream os) throws IOException {
         checkDependencyPresent("ZSTD compression");
-        return new com.github.luben.zstd.ZstdOutputStream(os);
+        return contexts().createCompressStream(os);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs on a pooled compression context.
+     */
+    @Override
+    public byte[] compress(byte[] data) throws IOException {
+        checkDependencyPresent("ZSTD compression");
+        return contexts().compress(data);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A single frame that records its content size is decoded on a pooled decompression context; anything
+     * else, such as multiple frames or an unknown or implausibly large size, is streamed.
+     */
+    @Override
+    public byte[] decompress(byte[] data) throws IOException {
+        checkDependencyPresent("ZSTD decompression");
+        byte[] result = contexts().decompress(data);
+        return result != null ? result : ICompress.super.decompress(data);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Direct buffers are passed to zstd without copying, as are heap buffers through their backing arrays;
+     * a mix of both falls back to the stream implementation. Runs on a pooled context.
+     */
+    @Override
+    public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        checkDependencyPresent("ZSTD compression");
+        int written = contexts().compress(src, dst);
+        return written >= 0 ? written : ICompress.super.compress(src, dst);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Direct buffers are passed to zstd without copying, as are heap buffers through their backing arrays;
+     * a mix of both falls back to the stream implementation. Runs on a pooled context.
+     */
+    @Override
+    public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        checkDependencyPresent("ZSTD decompression");
+        int written = contexts().decompress(src, dst);
+        return written >= 0 ? written : ICompress.super.decompress(src, dst);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Matches ZSTD_CStreamInSize(), the block size zstd consumes per call; with workers, a larger buffer
+     * halves the number of native calls needed to fill each job.
+     */
+    @Override
+    public int getBufferSize() {
+        return workers == 0 ? 128 * 1024 : 1024 * 1024;
     }
 
     @Override
     public String getFileExtension() {
         return ".zst";
     }
+
+    /**
+     * Ends the idle native contexts pooled by all zstd codecs, e.g. after a burst of work. The codecs stay
+     * usable and create contexts again when needed.
+     */
+    public static void trimIdleContexts() {
+        synchronized (POOLS) {
+            for (Contexts c : POOLS) c.trim();
+        }
+    }
+
+    private Contexts contexts() {
+        Contexts c = contexts;
+        if (c == null) {
+            synchronized (this) {
+                c = contexts;
+                if (c == null) {
+                    contexts = c = Contexts.forCodec(this);
+                    POOLS.add(c);
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Loads the zstd-jni native library on first use, so that a library that cannot be loaded, e.g. for lack
+     * of a writable temporary directory, surfaces as an {@link IOException}. Only initialized after the
+     * dependency check passed.
+     */
+    private static final class Native {
+        static final boolean AVAILABLE;
+        static final Throwable CAUSE;
+
+        static {
+            boolean available;
+            Throwable cause = null;
+            try {
+                com.github.luben.zstd.util.Native.load();
+                available = true;
+            } catch (Throwable e) {
+                available = false;
+                cause = e;
+            }
+            AVAILABLE = available;
+            CAUSE = cause;
+        }
+    }
+
+    /**
+     * Pooled native contexts, the digested dictionary and every other use of zstd-jni. Kept out of the
+     * outer class so that it can be loaded, and its dependency check run, without zstd-jni on the classpath.
+     */
+    private static final class Contexts {
+        private static final int MAX_IDLE = Runtime.getRuntime().availableProcessors() * 2;
+        /**
+         * The pools of codecs without a dictionary, by configuration.
+         */
+        private static final ConcurrentHashMap<List<Object>, Contexts> SHARED = new ConcurrentHashMap<>();
+        private final ZstdCompress codec;
+        private final com.github.luben.zstd.ZstdDictCompress dictCompress;
+        private final com.github.luben.zstd.ZstdDictDecompress dictDecompress;
+        private final IdleQueue<com.github.luben.zstd.ZstdCompressCtx> idleCompress = new IdleQueue<>(MAX_IDLE);
+        private final IdleQueue<com.github.luben.zstd.ZstdDecompressCtx> idleDecompress = new IdleQueue<>(MAX_IDLE);
+
+        static Contexts forCodec(ZstdCompress codec) {
+            if (codec.dictionary != null) return new Contexts(codec);
+            List<Object> key = List.of(codec.level, codec.windowLog, codec.longDistanceMatching, codec.workers,
+                    codec.jobSize, codec.overlapLog, codec.checksum);
+            return SHARED.computeIfAbsent(key, k -> new Contexts(codec));
+        }
+
+        private Contexts(ZstdCompress codec) {
+            this.codec = codec;
+            ZstdDictionary dictionary = codec.dictionary;
+            if (dictionary == null) {
+                dictCompress = null;
+                dictDecompress = null;
+            } else {
+                dictCompress = new com.github.luben.zstd.ZstdDictCompress(dictionary.bytes(), codec.level);
+                dictDecompress = new com.github.luben.zstd.ZstdDictDecompress(dictionary.bytes());
+            }
+        }
+
+        private com.github.luben.zstd.ZstdCompressCtx acquireCompress() {
+            com.github.luben.zstd.ZstdCompressCtx ctx = idleCompress.poll();
+            if (ctx != null) return ctx;
+            ctx = new com.github.luben.zstd.ZstdCompressCtx().setLevel(codec.level);
+            if (codec.windowLog != 0) ctx.setWindowLog(codec.windowLog);
+            if (codec.longDistanceMatching) ctx.setLong(codec.windowLog != 0 ? codec.windowLog : DEFAULT_WINDOW_LOG_MAX);
+            if (codec.workers != 0) {
+                ctx.setWorkers(codec.workers);
+                if (codec.jobSize != 0) ctx.setJobSize(codec.jobSize);
+                if (codec.overlapLog != 0) ctx.setOverlapLog(codec.overlapLog);
+            }
+            if (codec.checksum) ctx.setChecksum(true);
+            return dictCompress == null ? ctx : ctx.loadDict(dictCompress);
+        }
+
+        private com.github.luben.zstd.ZstdDecompressCtx acquireDecompress() {
+            com.github.luben.zstd.ZstdDecompressCtx ctx = idleDecompress.poll();
+            if (ctx != null) return ctx;
+            ctx = new com.github.luben.zstd.ZstdDecompressCtx();
+            return dictDecompress == null ? ctx : ctx.loadDict(dictDecompress);
+        }
+
+        /**
+         * Returns a context to the pool, or ends it if the pool is full or the call using it failed.
+         * Contexts with workers are always ended, as each owns a pool of native threads.
+         */
+        private void release(com.github.luben.zstd.ZstdCompressCtx ctx, boolean reusable) {
+            if (!reusable || codec.workers != 0 || !idleCompress.offer(ctx)) ctx.close();
+        }
+
+        private void release(com.github.luben.zstd.ZstdDecompressCtx ctx, boolean reusable) {
+            if (!reusable || !idleDecompress.offer(ctx)) ctx.close();
+        }
+
+        void trim() {
+            com.github.luben.zstd.ZstdCompressCtx compressCtx;
+            while ((compressCtx = idleCompress.poll()) != null) compressCtx.close();
+            com.github.luben.zstd.ZstdDecompressCtx decompressCtx;
+            while ((decompressCtx = idleDecompress.poll()) != null) decompressCtx.close();
+        }
+
+        InputStream createDecompressStream(InputStream is) throws IOException {
+            com.github.luben.zstd.ZstdInputStream stream = new com.github.luben.zstd.ZstdInputStream(is);
+            if (codec.windowLog > DEFAULT_WINDOW_LOG_MAX) stream.setLongMax(codec.windowLog);
+            if (dictDecompress != null) stream.setDict(dictDecompress);
+            return stream;
+        }
+
+        OutputStream createCompressStream(OutputStream os) throws IOException {
+            com.github.luben.zstd.ZstdOutputStream stream = new com.github.luben.zstd.ZstdOutputStream(os, codec.level);
+            try {
+                if (codec.windowLog != 0) stream.setWindowLog(codec.windowLog);
+                if (codec.longDistanceMatching) stream.setLong(codec.windowLog != 0 ? codec.windowLog : DEFAULT_WINDOW_LOG_MAX);
+                if (codec.workers != 0) {
+                    stream.setWorkers(codec.workers);
+                    if (codec.jobSize != 0) stream.setJobSize(codec.jobSize);
+                    if (codec.overlapLog != 0) stream.setOverlapLog(codec.overlapLog);
+                }
+                if (codec.checksum) stream.setChecksum(true);
+                if (dictCompress != null) stream.setDict(dictCompress);
+            } catch (IOException | RuntimeException e) {
+                stream.close();
+                throw e;
+            }
+            return stream;
+        }
+
+        byte[] compress(byte[] data) throws IOException {
+            com.github.luben.zstd.ZstdCompressCtx ctx = acquireCompress();
+            boolean ok = false;
+            try {
+                byte[] result = ctx.compress(data);
+                ok = true;
+                return result;
+            } catch (com.github.luben.zstd.ZstdException e) {
+                throw new IOException("ZSTD compression failed: " + e.getMessage(), e);
+            } finally {
+                release(ctx, ok);
+            }
+        }
+
+        /**
+         * Decodes a single frame with a recorded content size, or returns {@code null} for anything else.
+         */
+        byte @Nullable [] decompress(byte[] data) throws IOException {
+            long contentSize = singleFrameContentSize(data);
+            if (contentSize < 0) return null;
+            com.github.luben.zstd.ZstdDecompressCtx ctx = acquireDecompress();
+            boolean ok = false;
+            try {
+                byte[] result = ctx.decompress(data, (int) contentSize);
+                ok = true;
+                return result;
+            } catch (com.github.luben.zstd.ZstdException e) {
+                throw new IOException("ZSTD decompression failed: " + e.getMessage(), e);
+            } finally {
+                release(ctx, ok);
+            }
+        }
+
+        /**
+         * Returns the content size recorded in the header of {@code data} if it is exactly one frame whose
+         * content size is {@linkplain ByteBuffers#isPlausibleContentSize(long, long) plausible}, or {@code -1}
+         * otherwise.
+         */
+        private static long singleFrameContentSize(byte[] data) {
+            try {
+                long contentSize = com.github.luben.zstd.Zstd.getFrameContentSize(data);
+                if (!ByteBuffers.isPlausibleContentSize(contentSize, data.length)) return -1;
+                return com.github.luben.zstd.Zstd.findFrameCompressedSize(data) == data.length ? contentSize : -1;
+            } catch (com.github.luben.zstd.ZstdException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * Compresses between two direct or two heap buffers, or returns {@code -1} for a mix of both.
+         */
+        int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+            boolean direct = src.isDirect() && dst.isDirect();
+            if (!direct && !(src.hasArray() && dst.hasArray())) return -1;
+            com.github.luben.zstd.ZstdCompressCtx ctx = acquireCompress();
+            boolean ok = false;
+            try {
+                int written = direct
+                        ? ctx.compressDirectByteBuffer(dst, dst.position(), dst.remaining(), src, src.position(), src.remaining())
+                        : ctx.compressByteArray(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining(),
+                        src.array(), src.arrayOffset() + src.position(), src.remaining());
+                ok = true;
+                return advance(src, dst, written);
+            } catch (com.github.luben.zstd.ZstdException e) {
+                throw new IOException("ZSTD compression failed: " + e.getMessage(), e);
+            } finally {
+                release(ctx, ok);
+            }
+        }
+
+        /**
+         * Decompresses between two direct or two heap buffers, or returns {@code -1} for a mix of both.
+         */
+        int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+            boolean direct = src.isDirect() && dst.isDirect();
+            if (!direct && !(src.hasArray() && dst.hasArray())) return -1;
+            com.github.luben.zstd.ZstdDecompressCtx ctx = acquireDecompress();
+            boolean ok = false;
+            try {
+                int written = direct
+                        ? ctx.decompressDirectByteBuffer(dst, dst.position(), dst.remaining(), src, src.position(), src.remaining())
+                        : ctx.decompressByteArray(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining(),
+                        src.array(), src.arrayOffset() + src.position(), src.remaining());
+                ok = true;
+                return advance(src, dst, written);
+            } catch (com.github.luben.zstd.ZstdException e) {
+                throw new IOException("ZSTD decompression failed: " + e.getMessage(), e);
+            } finally {
+                release(ctx, ok);
+            }
+        }
+
+        private static int advance(ByteBuffer src, ByteBuffer dst, int written) {
+            src.position(src.limit());
+            dst.position(dst.position() + written);
+            return written;
+        }
+    }
+
+    /**
+     * Configures a {@link ZstdCompress} codec. Settings left untouched keep the library defaults.
+     */
+    public static final class Builder {
+        private int level = DEFAULT_LEVEL;
+        private int windowLog;
+        private boolean longDistanceMatching;
+        private int workers;
+        private int jobSize;
+        private int overlapLog;
+        private boolean checksum;
+        private @Nullable ZstdDictionary dictionary;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the compression level. Negative levels trade ratio for speed, levels above 19 need
+         * considerably more memory; the default is 3.
+         *
+         * @param level the level, from -131072 to 22
+         * @return this builder
+         */
+        public Builder level(@Range(from = -131072, to = 22) int level) {
+            if (level < -131072 || level > 22) throw new IllegalArgumentException("level must be between -131072 and 22");
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * Sets the base-2 logarithm of the match window, e.g. 27 for 128 MiB. Larger windows find matches
+         * further back at the cost of memory on both sides; {@code 0} lets the level decide.
+         * Windows above 27 are accepted by this codec's decompressor, other decoders must be told
+         * to allow them.
+         *
+         * @param windowLog the window log, from 10 to 31, or {@code 0}
+         * @return this builder
+         */
+        public Builder windowLog(@Range(from = 0, to = 31) int windowLog) {
+            if (windowLog != 0 && (windowLog < 10 || windowLog > 31))
+                throw new IllegalArgumentException("windowLog must be between 10 and 31, or 0");
+            this.windowLog = windowLog;
+            return this;
+        }
+
+        /**
+         * Enables long-distance matching, which finds repetitions far apart in large inputs such as
+         * backups. Uses a 128 MiB window unless {@link #windowLog(int)} is set.
+         *
+         * @param longDistanceMatching whether to enable long-distance matching
+         * @return this builder
+         */
+        public Builder longDistanceMatching(boolean longDistanceMatching) {
+            this.longDistanceMatching = longDistanceMatching;
+            return this;
+        }
+
+        /**
+         * Sets the number of native worker threads; {@code 0} compresses on the calling thread.
+         *
+         * @param workers the number of workers
+         * @return this builder
+         */
+        public Builder workers(@Range(from = 0, to = 200) int workers) {
+            if (workers < 0 || workers > 200) throw new IllegalArgumentException("workers must be between 0 and 200");
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Sets the size of the jobs handed to the workers; {@code 0} lets zstd pick, which is several times
+         * the window size. Smaller jobs spread small inputs over more workers at a slight loss of ratio.
+         * Only used with {@link #workers(int)}.
+         *
+         * @param jobSize the job size in bytes, at least 512 KiB, or {@code 0}
+         * @return this builder
+         */
+        public Builder jobSize(@Range(from = 0, to = 1 << 30) int jobSize) {
+            if (jobSize != 0 && (jobSize < 512 * 1024 || jobSize > 1 << 30))
+                throw new IllegalArgumentException("jobSize must be between 512 KiB and 1 GiB, or 0");
+            this.jobSize = jobSize;
+            return this;
+        }
+
+        /**
+         * Sets how much of the previous job's data each job reloads as history, from 1 (none) to 9
+         * (the full window); {@code 0} lets the level decide. Only used with {@link #workers(int)}.
+         *
+         * @param overlapLog the overlap log, from 1 to 9, or {@code 0}
+         * @return this builder
+         */
+        public Builder overlapLog(@Range(from = 0, to = 9) int overlapLog) {
+            if (overlapLog < 0 || overlapLog > 9) throw new IllegalArgumentException("overlapLog must be between 0 and 9");
+            this.overlapLog = overlapLog;
+            return this;
+        }
+
+        /**
+         * Appends a content checksum to every frame, verified on decompression.
+         *
+         * @param checksum whether to write checksums
+         * @return this builder
+         */
+        public Builder checksum(boolean checksum) {
+            this.checksum = checksum;
+            return this;
+        }
+
+        /**
+         * Compresses and decompresses with the given dictionary.
+         *
+         * @param dictionary the dictionary, or {@code null} for none
+         * @return this builder
+         */
+        public Builder dictionary(@Nullable ZstdDictionary dictionary) {
+            this.dictionary = dictionary;
+            return this;
+        }
+
+        /**
+         * Creates the codec.
+         *
+         * @return the configured codec
+         */
+        public ICompress build() {
+            return new ZstdCompress(this);
+        }
+    }
 }
@@ -0,0 +1,168 @@
+package one.pkg.tiny.utils.compress;
+
+import one.pkg.tiny.utils.Reflect;
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Range;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A zstd dictionary, either trained from sample payloads or loaded from its serialized form.
+ * <p>
+ * Small records share little redundancy within themselves, so zstd compresses them poorly on their own;
+ * a dictionary trained on representative samples primes the codec with their common content.
+ * The dictionary is plain data and can be stored alongside the application with {@link #getBytes()}
+ * or {@link #write(Path)}; the same dictionary must be used for compression and decompression.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * ZstdDictionary dictionary = ZstdDictionary.train(samples, 16 * 1024);
+ * dictionary.write(dataDir.resolve("records.dict"));
+ * ICompress codec = ZstdCompress.withDictionary(dictionary);
+ * byte[] packed = codec.compress(record);
+ * }</pre>
+ */
+public final class ZstdDictionary {
+    private static final int MAGIC = 0xEC30A437;
+    private static final boolean HAS_DEPENDENCY = Reflect.hasClass("com.github.luben.zstd.ZstdDictTrainer");
+
+    private final byte[] bytes;
+
+    private ZstdDictionary(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Trains a dictionary from sample payloads.
+     * <p>
+     * Training needs a reasonable number of samples, typically a few hundred, whose total size is
+     * a good multiple of the dictionary size; zstd recommends about 100 times.
+     *
+     * @param samples        the sample payloads
+     * @param dictionarySize the maximum size of the dictionary in bytes, usually 16 to 112 KiB
+     * @return the trained dictionary
+     * @throws IOException if zstd-jni is missing or training fails, e.g. because there are too few samples
+     */
+    public static @NotNull ZstdDictionary train(@NotNull Collection<byte[]> samples,
+                                                @Range(from = 256, to = Integer.MAX_VALUE) int dictionarySize) throws IOException {
+        Validate.notNull(samples, "Samples must not be null");
+        if (dictionarySize < 256) throw new IllegalArgumentException("dictionarySize must be at least 256");
+        if (!HAS_DEPENDENCY)
+            throw new IOException("ZSTD dictionary training requires the 'com.github.luben:zstd-jni' library to be present on the classpath");
+        return new ZstdDictionary(Trainer.train(samples.toArray(new byte[0][]), dictionarySize));
+    }
+
+    /**
+     * Wraps a serialized dictionary, as returned by {@link #getBytes()}.
+     * Raw content without a dictionary header is accepted as well and used as a prefix.
+     *
+     * @param bytes the dictionary; copied
+     * @return the dictionary
+     */
+    public static @NotNull ZstdDictionary of(byte @NotNull [] bytes) {
+        Validate.notNull(bytes, "Dictionary must not be null");
+        if (bytes.length == 0) throw new IllegalArgumentException("Dictionary must not be empty");
+        return new ZstdDictionary(bytes.clone());
+    }
+
+    /**
+     * Reads a dictionary written by {@link #write(Path)}.
+     *
+     * @param file the dictionary file
+     * @return the dictionary
+     * @throws IOException if the file cannot be read
+     */
+    public static @NotNull ZstdDictionary read(@NotNull Path file) throws IOException {
+        Validate.notNull(file, "File must not be null");
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length == 0) throw new IOException("Dictionary file is empty: " + file);
+        return new ZstdDictionary(bytes);
+    }
+
+    /**
+     * Writes the serialized dictionary to a file, replacing it if it exists.
+     *
+     * @param file the target file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(@NotNull Path file) throws IOException {
+        Validate.notNull(file, "File must not be null");
+        Files.write(file, bytes);
+    }
+
+    /**
+     * Returns the serialized dictionary.
+     *
+     * @return a copy of the dictionary bytes
+     */
+    public byte @NotNull [] getBytes() {
+        return bytes.clone();
+    }
+
+    /**
+     * Returns the dictionary id that zstd records in frames compressed with this dictionary,
+     * or {@code 0} for raw content dictionaries.
+     *
+     * @return the unsigned 32-bit dictionary id
+     */
+    public long getId() {
+        if (bytes.length < 8 || readIntLE(0) != MAGIC) return 0;
+        return readIntLE(4) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Returns the size of the serialized dictionary.
+     *
+     * @return the size in bytes
+     */
+    public int size() {
+        return bytes.length;
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    private int readIntLE(int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ZstdDictionary && Arrays.equals(bytes, ((ZstdDictionary) o).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "ZstdDictionary{id=" + getId() + ", size=" + bytes.length + '}';
+    }
+
+    /**
+     * Holds the use of zstd-jni, so that this class loads without it; only loaded after the dependency check.
+     */
+    private static final class Trainer {
+        static byte[] train(byte[][] samples, int dictionarySize) throws IOException {
+            byte[] buffer = new byte[dictionarySize];
+            long size;
+            try {
+                size = com.github.luben.zstd.Zstd.trainFromBuffer(samples, buffer);
+            } catch (com.github.luben.zstd.ZstdException e) {
+                throw new IOException("ZSTD dictionary training failed: " + e.getMessage(), e);
+            }
+            if (com.github.luben.zstd.Zstd.isError(size))
+                throw new IOException("ZSTD dictionary training failed: " + com.github.luben.zstd.Zstd.getErrorName(size));
+            return Arrays.copyOf(buffer, (int) size);
+        }
+    }
+}
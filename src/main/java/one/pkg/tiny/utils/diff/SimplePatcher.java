@@ -1,13 +1,12 @@
 package one.pkg.tiny.utils.diff;
 
 import one.pkg.tiny.utils.compress.ICompress;
+import one.pkg.tiny.utils.hash.HashAlgorithm;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.nio.file.Files;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.logging.Logger;
 
@@ -213,13 +212,7 @@ public class SimplePatcher {
         patch.writeInt(srcData.length);
         patch.writeInt(dstData.length);
 
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] srcHash = md.digest(srcData);
-            patch.write(srcHash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new IOException("Failed to calculate MD5 checksum", e);
-        }
+        patch.write(HashAlgorithm.MD5.hash(srcData));
 
         int i = 0, j = 0;
 
@@ -408,67 +401,61 @@ public class SimplePatcher {
 
         int dstPos = 0;
 
-        try {
-            while (patchInput.available() > 0) {
-                byte command = patchInput.readByte();
-
-                switch (command) {
-                    case COMMAND_EQUAL:
-                        int equalLength = patchInput.readInt();
-                        if (dstPos + equalLength > dstData.length) {
-                            throw new IllegalStateException("Patch application failed: exceeded target file boundary");
-                        }
-                        output.write(dstData, dstPos, equalLength);
-                        dstPos += equalLength;
-                        break;
-
-                    case COMMAND_INSERT:
-                        int insertLength = patchInput.readInt();
-                        byte[] insertData = new byte[insertLength];
-                        patchInput.readFully(insertData);
-                        output.write(insertData);
-                        break;
-
-                    case COMMAND_DELETE:
-                        int deleteLength = patchInput.readInt();
-                        byte[] expectedDeleteData = new byte[deleteLength];
-                        patchInput.readFully(expectedDeleteData);
-
-                        if (dstPos + deleteLength > dstData.length) {
-                            throw new IllegalStateException("Patch application failed: exceeded target file boundary");
-                        }
+        while (patchInput.available() > 0) {
+            byte command = patchInput.readByte();
 
-                        byte[] actualDeleteData = Arrays.copyOfRange(dstData, dstPos, dstPos + deleteLength);
-                        if (!Arrays.equals(expectedDeleteData, actualDeleteData)) {
-                            throw new IllegalStateException("Patch application failed: target file content mismatch, cannot apply patch");
-                        }
+            switch (command) {
+                case COMMAND_EQUAL:
+                    int equalLength = patchInput.readInt();
+                    if (dstPos + equalLength > dstData.length) {
+                        throw new IllegalStateException("Patch application failed: exceeded target file boundary");
+                    }
+                    output.write(dstData, dstPos, equalLength);
+                    dstPos += equalLength;
+                    break;
+
+                case COMMAND_INSERT:
+                    int insertLength = patchInput.readInt();
+                    byte[] insertData = new byte[insertLength];
+                    patchInput.readFully(insertData);
+                    output.write(insertData);
+                    break;
+
+                case COMMAND_DELETE:
+                    int deleteLength = patchInput.readInt();
+                    byte[] expectedDeleteData = new byte[deleteLength];
+                    patchInput.readFully(expectedDeleteData);
+
+                    if (dstPos + deleteLength > dstData.length) {
+                        throw new IllegalStateException("Patch application failed: exceeded target file boundary");
+                    }
 
-                        dstPos += deleteLength;
-                        break;
+                    byte[] actualDeleteData = Arrays.copyOfRange(dstData, dstPos, dstPos + deleteLength);
+                    if (!Arrays.equals(expectedDeleteData, actualDeleteData)) {
+                        throw new IllegalStateException("Patch application failed: target file content mismatch, cannot apply patch");
+                    }
 
-                    default:
-                        throw new IllegalStateException("Patch file format error: unknown command code " + command);
-                }
-            }
+                    dstPos += deleteLength;
+                    break;
 
-            if (dstPos != dstData.length) {
-                throw new IllegalStateException("Patch application failed: target file not fully processed");
+                default:
+                    throw new IllegalStateException("Patch file format error: unknown command code " + command);
             }
+        }
 
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] resultMD5 = md.digest(output.toByteArray());
+        if (dstPos != dstData.length) {
+            throw new IllegalStateException("Patch application failed: target file not fully processed");
+        }
 
-            if (!Arrays.equals(expectedMD5, resultMD5)) {
-                throw new IllegalStateException("Patch application failed: file checksum mismatch, patch may be corrupted");
-            }
+        byte[] resultMD5 = HashAlgorithm.MD5.hash(output.toByteArray());
 
-            if (output.size() != originalSrcSize) {
-                Logger.getGlobal().warning("Warning: Size mismatch after applying patch, expected " +
-                        originalSrcSize + ", actual " + output.size());
-            }
+        if (!Arrays.equals(expectedMD5, resultMD5)) {
+            throw new IllegalStateException("Patch application failed: file checksum mismatch, patch may be corrupted");
+        }
 
-        } catch (NoSuchAlgorithmException e) {
-            throw new IOException("Failed to calculate MD5 checksum", e);
+        if (output.size() != originalSrcSize) {
+            Logger.getGlobal().warning("Warning: Size mismatch after applying patch, expected " +
+                    originalSrcSize + ", actual " + output.size());
         }
 
         return output;
@@ -0,0 +1,173 @@
+package one.pkg.tiny.utils.hash;
+
+import one.pkg.tiny.utils.Threads;
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Range;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Non-blocking file hashing that returns {@link CompletableFuture}s.
+ * <p>
+ * Work runs on a configurable executor, by default one virtual thread per task when the runtime supports
+ * virtual threads (Java 21+) and a small daemon thread pool otherwise. A semaphore bounds the number of
+ * files being read at the same time, so large scans do not thrash the disk no matter how many tasks are queued.
+ * <p>
+ * {@link #hashAll(Collection)} groups files smaller than the batch threshold into shared tasks, so scanning
+ * thousands of small files does not create thousands of tasks.
+ */
+public final class AsyncHash {
+    private static final int SMALL_FILE_THRESHOLD = 64 * 1024;
+    private static final int BATCH_SIZE = 32;
+    private static volatile AsyncHash defaultInstance;
+
+    private final Executor executor;
+    private final HashAlgorithm algorithm;
+    private final Semaphore reads;
+
+    /**
+     * Creates an async hasher.
+     *
+     * @param executor           the executor running the hashing tasks
+     * @param algorithm          the hash algorithm
+     * @param maxConcurrentReads the maximum number of files read at the same time
+     */
+    public AsyncHash(@NotNull Executor executor, @NotNull HashAlgorithm algorithm,
+                     @Range(from = 1, to = Integer.MAX_VALUE) int maxConcurrentReads) {
+        Validate.notNull(executor, "Executor must not be null");
+        Validate.notNull(algorithm, "Algorithm must not be null");
+        if (maxConcurrentReads < 1) throw new IllegalArgumentException("maxConcurrentReads must be at least 1");
+        this.executor = executor;
+        this.algorithm = algorithm;
+        this.reads = new Semaphore(maxConcurrentReads);
+    }
+
+    /**
+     * Returns the shared SHA-256 instance on the default executor, allowing as many concurrent reads
+     * as there are available processors.
+     *
+     * @return the default instance
+     */
+    public static AsyncHash getDefault() {
+        AsyncHash instance = defaultInstance;
+        if (instance == null) {
+            synchronized (AsyncHash.class) {
+                instance = defaultInstance;
+                if (instance == null) {
+                    defaultInstance = instance = new AsyncHash(Threads.newBlockingExecutor("tiny-utils-hash"),
+                            HashAlgorithm.SHA_256, Runtime.getRuntime().availableProcessors());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the hash algorithm of this instance.
+     *
+     * @return the algorithm
+     */
+    public HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Hashes a file asynchronously.
+     *
+     * @param file the file to hash
+     * @return a future completed with the hash, or exceptionally if the file cannot be read
+     */
+    public CompletableFuture<byte[]> hash(@NotNull Path file) {
+        Validate.notNull(file, "File must not be null");
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        submit(() -> read(file, future), List.of(future));
+        return future;
+    }
+
+    /**
+     * Hashes in-memory data asynchronously. No read permit is taken.
+     *
+     * @param data the data to hash
+     * @return a future completed with the hash
+     */
+    public CompletableFuture<byte[]> hash(byte @NotNull [] data) {
+        Validate.notNull(data, "Data must not be null");
+        return CompletableFuture.supplyAsync(() -> algorithm.hash(data), executor);
+    }
+
+    /**
+     * Hashes many files asynchronously, batching small files into shared tasks.
+     * <p>
+     * The files are inspected on the executor, so this method returns immediately.
+     *
+     * @param files the files to hash
+     * @return an unmodifiable map of a future per file, in the iteration order of {@code files}
+     */
+    public Map<Path, CompletableFuture<byte[]>> hashAll(@NotNull Collection<Path> files) {
+        Validate.notNull(files, "Files must not be null");
+        Map<Path, CompletableFuture<byte[]>> futures = new LinkedHashMap<>();
+        for (Path file : files) futures.putIfAbsent(file, new CompletableFuture<>());
+        if (futures.isEmpty()) return Map.of();
+
+        submit(() -> {
+            List<Map.Entry<Path, CompletableFuture<byte[]>>> batch = new ArrayList<>(BATCH_SIZE);
+            for (Map.Entry<Path, CompletableFuture<byte[]>> entry : futures.entrySet()) {
+                long size;
+                try {
+                    size = Files.size(entry.getKey());
+                } catch (IOException e) {
+                    entry.getValue().completeExceptionally(e);
+                    continue;
+                }
+                if (size >= SMALL_FILE_THRESHOLD) {
+                    submit(() -> read(entry.getKey(), entry.getValue()), List.of(entry.getValue()));
+                    continue;
+                }
+                batch.add(entry);
+                if (batch.size() == BATCH_SIZE) {
+                    submitBatch(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) submitBatch(batch);
+        }, futures.values());
+        return Collections.unmodifiableMap(futures);
+    }
+
+    private void submitBatch(List<Map.Entry<Path, CompletableFuture<byte[]>>> batch) {
+        submit(() -> {
+            for (Map.Entry<Path, CompletableFuture<byte[]>> entry : batch) read(entry.getKey(), entry.getValue());
+        }, batch.stream().map(Map.Entry::getValue).toList());
+    }
+
+    private void submit(Runnable task, Collection<CompletableFuture<byte[]>> dependents) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            for (CompletableFuture<byte[]> future : dependents) future.completeExceptionally(e);
+        }
+    }
+
+    private void read(Path file, CompletableFuture<byte[]> future) {
+        if (future.isDone()) return;
+        try {
+            reads.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return;
+        }
+        try {
+            future.complete(algorithm.hash(file));
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        } finally {
+            reads.release();
+        }
+    }
+}
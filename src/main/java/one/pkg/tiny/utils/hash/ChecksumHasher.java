@@ -0,0 +1,43 @@
+package one.pkg.tiny.utils.hash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * Adapts a 32-bit {@link Checksum} such as {@link java.util.zip.CRC32C} to the {@link Hasher} API.
+ * The result is the checksum value as 4 big-endian bytes.
+ */
+final class ChecksumHasher extends Hasher {
+    private final Checksum checksum;
+
+    ChecksumHasher(Checksum checksum) {
+        this.checksum = checksum;
+    }
+
+    @Override
+    public Hasher update(byte[] data, int offset, int length) {
+        checksum.update(data, offset, length);
+        return this;
+    }
+
+    @Override
+    public Hasher update(@NotNull ByteBuffer buffer) {
+        checksum.update(buffer);
+        return this;
+    }
+
+    @Override
+    public byte[] finish() {
+        int value = (int) checksum.getValue();
+        checksum.reset();
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    @Override
+    public Hasher reset() {
+        checksum.reset();
+        return this;
+    }
+}
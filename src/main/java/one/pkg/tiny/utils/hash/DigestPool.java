@@ -0,0 +1,100 @@
+package one.pkg.tiny.utils.hash;
+
+import one.pkg.tiny.utils.IdleQueue;
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Range;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A lock-free pool of {@link MessageDigest} instances for a single algorithm.
+ * <p>
+ * {@code MessageDigest} is not thread-safe, so every concurrent caller needs its own instance.
+ * Digests are reset before they are returned to the pool; at most {@code maxIdle} idle instances
+ * are retained in an {@link IdleQueue}, any surplus is left to the garbage collector.
+ */
+public final class DigestPool {
+    private final String algorithm;
+    private final IdleQueue<MessageDigest> idle;
+
+    /**
+     * Creates a pool for the given algorithm that keeps up to twice the number of available processors idle.
+     *
+     * @param algorithm the name of the digest algorithm, e.g. {@code SHA-256}
+     * @throws IllegalArgumentException if the algorithm is not supported by any installed provider
+     */
+    public DigestPool(@NotNull String algorithm) {
+        this(algorithm, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Creates a pool for the given algorithm.
+     *
+     * @param algorithm the name of the digest algorithm, e.g. {@code SHA-256}
+     * @param maxIdle   the maximum number of idle digests retained by the pool
+     * @throws IllegalArgumentException if the algorithm is not supported by any installed provider
+     */
+    public DigestPool(@NotNull String algorithm, @Range(from = 1, to = Integer.MAX_VALUE) int maxIdle) {
+        Validate.notNull(algorithm, "Algorithm must not be null");
+        if (maxIdle < 1) throw new IllegalArgumentException("maxIdle must be at least 1");
+        this.algorithm = algorithm;
+        this.idle = new IdleQueue<>(maxIdle);
+        release(create());
+    }
+
+    /**
+     * Returns the name of the digest algorithm served by this pool.
+     *
+     * @return the algorithm name
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Takes an idle digest from the pool, or creates a new one if none is available.
+     * <p>
+     * The caller owns the digest until it is handed back with {@link #release(MessageDigest)}.
+     *
+     * @return a digest in its initial state
+     */
+    public MessageDigest acquire() {
+        MessageDigest digest = idle.poll();
+        return digest != null ? digest : create();
+    }
+
+    /**
+     * Resets the digest and returns it to the pool.
+     *
+     * @param digest a digest previously obtained from {@link #acquire()}
+     */
+    public void release(@NotNull MessageDigest digest) {
+        digest.reset();
+        idle.offer(digest);
+    }
+
+    /**
+     * Computes the digest of the given data with a pooled instance.
+     *
+     * @param data the data to hash
+     * @return the resulting digest
+     */
+    public byte[] digest(byte[] data) {
+        MessageDigest digest = acquire();
+        try {
+            return digest.digest(data);
+        } finally {
+            release(digest);
+        }
+    }
+
+    private MessageDigest create() {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm, e);
+        }
+    }
+}
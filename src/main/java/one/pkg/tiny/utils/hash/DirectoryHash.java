@@ -0,0 +1,299 @@
+package one.pkg.tiny.utils.hash;
+
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Computes a deterministic Merkle tree over the content of a directory.
+ * <p>
+ * Files are hashed concurrently on a bounded executor; each directory hash covers the sorted names,
+ * types and hashes of its children:
+ * <pre>
+ * file = H(content)
+ * dir  = H(0x01 || for each child ordered by name: type || uint32_be(len(name)) || utf8(name) || child)
+ * </pre>
+ * where {@code type} is {@code 0x00} for files and {@code 0x01} for directories. Symbolic links below the
+ * root are not followed and, like other non-regular files, are not part of the tree; a root that is a link
+ * to a directory is resolved first.
+ * <p>
+ * Two trees built with the same algorithm can be compared with {@link #diff(Node, Node)}, which only
+ * descends into subtrees whose hashes differ.
+ */
+public final class DirectoryHash {
+    private static final byte FILE = 0x00;
+    private static final byte DIRECTORY = 0x01;
+
+    private DirectoryHash() {
+    }
+
+    /**
+     * Hashes a directory with SHA-256 using one thread per available processor.
+     *
+     * @param root the directory to hash
+     * @return the root node of the tree
+     * @throws IOException if the directory cannot be walked or a file cannot be read
+     */
+    public static Node hash(@NotNull Path root) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return hash(root, HashAlgorithm.SHA_256, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Hashes a directory, hashing its files on the given executor.
+     *
+     * @param root      the directory to hash
+     * @param algorithm the hash algorithm for file contents and directory nodes
+     * @param executor  the executor that hashes file contents; its size bounds the number of concurrent reads
+     * @return the root node of the tree
+     * @throws IOException if the directory cannot be walked or a file cannot be read
+     */
+    public static Node hash(@NotNull Path root, @NotNull HashAlgorithm algorithm,
+                            @NotNull ExecutorService executor) throws IOException {
+        Validate.notNull(algorithm, "Algorithm must not be null");
+        return hash(root, algorithm, null, executor);
+    }
+
+    /**
+     * Hashes a directory, looking file contents up in a {@link FileHashCache} so that unchanged files are not read.
+     *
+     * @param root     the directory to hash
+     * @param cache    the cache providing file hashes; its algorithm is used for the whole tree
+     * @param executor the executor that hashes file contents; its size bounds the number of concurrent reads
+     * @return the root node of the tree
+     * @throws IOException if the directory cannot be walked or a file cannot be read
+     */
+    public static Node hash(@NotNull Path root, @NotNull FileHashCache cache,
+                            @NotNull ExecutorService executor) throws IOException {
+        Validate.notNull(cache, "Cache must not be null");
+        return hash(root, cache.getAlgorithm(), cache, executor);
+    }
+
+    private static Node hash(Path root, HashAlgorithm algorithm, @Nullable FileHashCache cache,
+                             ExecutorService executor) throws IOException {
+        Validate.notNull(root, "Root must not be null");
+        Validate.notNull(executor, "Executor must not be null");
+        if (!Files.isDirectory(root)) throw new IllegalArgumentException("Root is not a directory: " + root);
+        // The walk does not follow links, not even at the root, so a linked root has to be resolved first.
+        root = root.toRealPath();
+
+        Deque<Builder> stack = new ArrayDeque<>();
+        Builder[] result = new Builder[1];
+        List<Future<byte[]>> pending = new ArrayList<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    Builder parent = stack.peek();
+                    Builder builder = new Builder(parent == null ? "" : name(dir), parent == null ? "" : parent.child(name(dir)), true, null);
+                    if (parent != null) parent.children.add(builder);
+                    stack.push(builder);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!attrs.isRegularFile()) return FileVisitResult.CONTINUE;
+                    Builder parent = stack.element();
+                    Future<byte[]> content = executor.submit(() -> cache != null ? cache.hash(file) : algorithm.hash(file));
+                    pending.add(content);
+                    parent.children.add(new Builder(name(file), parent.child(name(file)), false, content));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    if (exc != null) throw exc;
+                    result[0] = stack.pop();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            return result[0].build(algorithm);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing " + root, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            throw new IOException("Failed to hash " + root, cause);
+        } finally {
+            // after a failed walk or an interrupt, stop hashing files nobody will read; finished ones are unaffected
+            for (Future<byte[]> future : pending) future.cancel(true);
+        }
+    }
+
+    /**
+     * Returns the relative paths at which two trees differ, in sorted order.
+     * <p>
+     * A path is reported if it exists in only one tree, has a different type, or is a file with different
+     * content. Directories present on both sides are never reported themselves; the comparison descends into
+     * them only if their hashes differ.
+     *
+     * @param left  the first tree
+     * @param right the second tree
+     * @return the differing paths, {@code '/'}-separated and relative to the roots
+     */
+    public static List<String> diff(@NotNull Node left, @NotNull Node right) {
+        Validate.notNull(left, "Left must not be null");
+        Validate.notNull(right, "Right must not be null");
+        List<String> out = new ArrayList<>();
+        diff(left, right, out);
+        return out;
+    }
+
+    private static void diff(Node left, Node right, List<String> out) {
+        if (Arrays.equals(left.hash, right.hash) && left.directory == right.directory) return;
+        if (!left.directory || !right.directory) {
+            out.add(left.path);
+            return;
+        }
+
+        List<Node> a = left.children, b = right.children;
+        int i = 0, j = 0;
+        while (i < a.size() || j < b.size()) {
+            int cmp = i == a.size() ? 1 : j == b.size() ? -1 : a.get(i).name.compareTo(b.get(j).name);
+            if (cmp < 0) out.add(a.get(i++).path);
+            else if (cmp > 0) out.add(b.get(j++).path);
+            else diff(a.get(i++), b.get(j++), out);
+        }
+    }
+
+    private static String name(Path path) {
+        Path name = path.getFileName();
+        return name == null ? "" : name.toString();
+    }
+
+    /**
+     * A file or directory in a Merkle tree produced by {@link DirectoryHash}.
+     */
+    public static final class Node {
+        private final String name;
+        private final String path;
+        private final boolean directory;
+        private final byte[] hash;
+        private final List<Node> children;
+
+        private Node(String name, String path, boolean directory, byte[] hash, List<Node> children) {
+            this.name = name;
+            this.path = path;
+            this.directory = directory;
+            this.hash = hash;
+            this.children = children;
+        }
+
+        /**
+         * Returns the file name of this node, or an empty string for the root.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the {@code '/'}-separated path of this node relative to the root.
+         *
+         * @return the relative path, empty for the root
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns whether this node is a directory.
+         *
+         * @return {@code true} for directories
+         */
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        /**
+         * Returns the hash of this node.
+         *
+         * @return a copy of the hash
+         */
+        public byte[] getHash() {
+            return hash.clone();
+        }
+
+        /**
+         * Returns the children of this node ordered by name; empty for files.
+         *
+         * @return an unmodifiable list of children
+         */
+        public List<Node> getChildren() {
+            return children;
+        }
+
+        /**
+         * Returns the direct child with the given name.
+         *
+         * @param name the child name
+         * @return the child, or {@code null} if there is none
+         */
+        public @Nullable Node getChild(@NotNull String name) {
+            for (Node child : children) if (child.name.equals(name)) return child;
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return (path.isEmpty() ? "/" : path) + " " + Hex.encode(hash);
+        }
+    }
+
+    private static final class Builder {
+        final String name;
+        final String path;
+        final boolean directory;
+        final @Nullable Future<byte[]> content;
+        final List<Builder> children = new ArrayList<>();
+
+        Builder(String name, String path, boolean directory, @Nullable Future<byte[]> content) {
+            this.name = name;
+            this.path = path;
+            this.directory = directory;
+            this.content = content;
+        }
+
+        String child(String childName) {
+            return path.isEmpty() ? childName : path + "/" + childName;
+        }
+
+        Node build(HashAlgorithm algorithm) throws InterruptedException, ExecutionException {
+            if (!directory) return new Node(name, path, false, content.get(), List.of());
+
+            children.sort(Comparator.comparing(b -> b.name));
+            List<Node> nodes = new ArrayList<>(children.size());
+            Hasher hasher = algorithm.newHasher();
+            hasher.update(new byte[]{DIRECTORY});
+            for (Builder child : children) {
+                Node node = child.build(algorithm);
+                byte[] nameBytes = node.name.getBytes(StandardCharsets.UTF_8);
+                hasher.update(ByteBuffer.allocate(5).put(node.directory ? DIRECTORY : FILE).putInt(nameBytes.length).array());
+                hasher.update(nameBytes);
+                hasher.update(node.hash);
+                nodes.add(node);
+            }
+            return new Node(name, path, true, hasher.finish(), Collections.unmodifiableList(nodes));
+        }
+    }
+}
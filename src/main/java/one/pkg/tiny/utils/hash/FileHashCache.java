@@ -0,0 +1,253 @@
+package one.pkg.tiny.utils.hash;
+
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache of file hashes keyed by path and validated against the file's size, modification time and file key.
+ * <p>
+ * Entries live in an access-ordered in-memory LRU; {@link #save()} persists them to a compact binary index
+ * so that unchanged files can be answered without being read again after a restart. A file is re-hashed
+ * whenever any of its attributes differ from the cached entry, and results are only cached if the file
+ * did not change while it was being hashed.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * FileHashCache cache = FileHashCache.open(dataDir.resolve("hashes.idx"), HashAlgorithm.SHA_256, 10_000);
+ * for (Path jar : jars) verify(jar, cache.hash(jar));
+ * cache.save();
+ * }</pre>
+ * <p>
+ * This class is thread-safe; files are hashed outside the cache lock.
+ */
+public final class FileHashCache {
+    private static final int MAGIC = 0x54484331;
+
+    private final @Nullable Path indexFile;
+    private final HashAlgorithm algorithm;
+    private final Map<String, Entry> entries;
+    private boolean dirty;
+
+    private FileHashCache(@Nullable Path indexFile, HashAlgorithm algorithm, int maxEntries) {
+        this.indexFile = indexFile;
+        this.algorithm = algorithm;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Opens a cache backed by the given index file, loading it if it exists.
+     * <p>
+     * An index written for a different algorithm, or one that cannot be parsed, is ignored.
+     *
+     * @param indexFile  the index file used by {@link #save()}
+     * @param algorithm  the hash algorithm
+     * @param maxEntries the maximum number of entries kept in memory and persisted
+     * @return the cache
+     * @throws IOException if the index file exists but cannot be read
+     */
+    public static FileHashCache open(@NotNull Path indexFile, @NotNull HashAlgorithm algorithm,
+                                     @Range(from = 1, to = Integer.MAX_VALUE) int maxEntries) throws IOException {
+        Validate.notNull(indexFile, "Index file must not be null");
+        FileHashCache cache = create(indexFile, algorithm, maxEntries);
+        if (Files.isRegularFile(indexFile)) cache.load(indexFile);
+        return cache;
+    }
+
+    /**
+     * Creates a cache that is not persisted.
+     *
+     * @param algorithm  the hash algorithm
+     * @param maxEntries the maximum number of entries kept in memory
+     * @return the cache
+     */
+    public static FileHashCache inMemory(@NotNull HashAlgorithm algorithm,
+                                         @Range(from = 1, to = Integer.MAX_VALUE) int maxEntries) {
+        return create(null, algorithm, maxEntries);
+    }
+
+    private static FileHashCache create(@Nullable Path indexFile, HashAlgorithm algorithm, int maxEntries) {
+        Validate.notNull(algorithm, "Algorithm must not be null");
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be at least 1");
+        return new FileHashCache(indexFile, algorithm, maxEntries);
+    }
+
+    /**
+     * Returns the hash algorithm used by this cache.
+     *
+     * @return the algorithm
+     */
+    public HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the hash of a file, reading the file only if it is not cached or has changed.
+     *
+     * @param file the file to hash
+     * @return the hash of the file content
+     * @throws IOException if the file does not exist or cannot be read
+     */
+    public byte[] hash(@NotNull Path file) throws IOException {
+        Validate.notNull(file, "File must not be null");
+        Path path = file.toAbsolutePath().normalize();
+        String key = path.toString();
+        BasicFileAttributes before = Files.readAttributes(path, BasicFileAttributes.class);
+        if (!before.isRegularFile()) throw new IllegalArgumentException("File is not a file: " + file);
+
+        Entry cached;
+        synchronized (this) {
+            cached = entries.get(key);
+        }
+        if (cached != null && cached.matches(before)) return cached.hash.clone();
+
+        byte[] hash = algorithm.hash(path);
+        BasicFileAttributes after = Files.readAttributes(path, BasicFileAttributes.class);
+        Entry entry = new Entry(before, hash);
+        if (entry.matches(after)) {
+            synchronized (this) {
+                entries.put(key, entry);
+                dirty = true;
+            }
+        }
+        return hash.clone();
+    }
+
+    /**
+     * Removes the cached entry of a file.
+     *
+     * @param file the file
+     */
+    public synchronized void invalidate(@NotNull Path file) {
+        Validate.notNull(file, "File must not be null");
+        if (entries.remove(file.toAbsolutePath().normalize().toString()) != null) dirty = true;
+    }
+
+    /**
+     * Removes all cached entries.
+     */
+    public synchronized void clear() {
+        if (!entries.isEmpty()) dirty = true;
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return the entry count
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the cached entries to the index file, replacing it atomically.
+     * Does nothing for in-memory caches or when nothing changed since the last load or save.
+     *
+     * @throws IOException if the index cannot be written
+     */
+    public void save() throws IOException {
+        if (indexFile == null) return;
+        Map<String, Entry> snapshot;
+        synchronized (this) {
+            if (!dirty) return;
+            snapshot = new LinkedHashMap<>(entries);
+            dirty = false;
+        }
+
+        Path parent = indexFile.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(algorithm.name());
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+                    Entry entry = e.getValue();
+                    out.writeUTF(e.getKey());
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.modified);
+                    out.writeUTF(entry.fileKey);
+                    out.write(entry.hash);
+                }
+            }
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            synchronized (this) {
+                dirty = true;
+            }
+            throw e;
+        }
+    }
+
+    private void load(Path index) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+            if (in.readInt() != MAGIC || !algorithm.name().equals(in.readUTF())) return;
+            int count = in.readInt();
+            Map<String, Entry> loaded = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                String fileKey = in.readUTF();
+                byte[] hash = new byte[algorithm.getLength()];
+                in.readFully(hash);
+                loaded.put(key, new Entry(size, modified, fileKey, hash));
+            }
+            synchronized (this) {
+                entries.putAll(loaded);
+            }
+        } catch (EOFException | UTFDataFormatException e) {
+            // a truncated or corrupt index only costs a re-hash
+        }
+    }
+
+    private static final class Entry {
+        final long size;
+        final long modified;
+        final String fileKey;
+        final byte[] hash;
+
+        Entry(long size, long modified, String fileKey, byte[] hash) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+            this.hash = hash;
+        }
+
+        Entry(BasicFileAttributes attributes, byte[] hash) {
+            this(attributes.size(), modified(attributes), fileKey(attributes), hash);
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size() && modified == modified(attributes)
+                    && fileKey.equals(fileKey(attributes));
+        }
+
+        private static long modified(BasicFileAttributes attributes) {
+            return attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS);
+        }
+
+        private static String fileKey(BasicFileAttributes attributes) {
+            Object key = attributes.fileKey();
+            return key == null ? "" : key.toString();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package one.pkg.tiny.utils.hash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.zip.CRC32C;
+
+/**
+ * The hash algorithms available through {@link one.pkg.tiny.utils.Hash} and {@link Hasher}.
+ * <p>
+ * Cryptographic digests are backed by {@link java.security.MessageDigest} and pooled per algorithm.
+ * The non-cryptographic algorithms are implemented in pure Java (or by the JDK in the case of CRC32C)
+ * and are much faster, but only suitable for integrity checks and deduplication keys.
+ */
+public enum HashAlgorithm {
+    SHA_256("SHA-256", 32),
+    SHA_1("SHA-1", 20),
+    MD5("MD5", 16),
+    /**
+     * 64-bit xxHash, canonical big-endian output.
+     */
+    XXH64(null, 8) {
+        @Override
+        public Hasher newHasher() {
+            return new XxHash64();
+        }
+
+        @Override
+        public byte[] hash(byte @NotNull [] data) {
+            long h = XxHash64.hash(data);
+            return new byte[]{(byte) (h >>> 56), (byte) (h >>> 48), (byte) (h >>> 40), (byte) (h >>> 32),
+                    (byte) (h >>> 24), (byte) (h >>> 16), (byte) (h >>> 8), (byte) h};
+        }
+    },
+    /**
+     * 32-bit xxHash, canonical big-endian output. Mainly for formats that require it, such as LZ4 frames.
+     */
+    XXH32(null, 4) {
+        @Override
+        public Hasher newHasher() {
+            return new XxHash32();
+        }
+
+        @Override
+        public byte[] hash(byte @NotNull [] data) {
+            int h = XxHash32.hash(data);
+            return new byte[]{(byte) (h >>> 24), (byte) (h >>> 16), (byte) (h >>> 8), (byte) h};
+        }
+    },
+    /**
+     * 128-bit MurmurHash3 (x64 variant).
+     */
+    MURMUR3_128(null, 16) {
+        @Override
+        public Hasher newHasher() {
+            return new Murmur3Hash128();
+        }
+    },
+    /**
+     * CRC-32C (Castagnoli), big-endian output. Hardware accelerated on most platforms.
+     */
+    CRC32C(null, 4) {
+        @Override
+        public Hasher newHasher() {
+            return new ChecksumHasher(new CRC32C());
+        }
+    };
+
+    private static final int BUFFER_SIZE = 65536;
+    private final String digestName;
+    private final int length;
+    private volatile DigestPool pool;
+
+    HashAlgorithm(String digestName, int length) {
+        this.digestName = digestName;
+        this.length = length;
+    }
+
+    /**
+     * Creates a new, reusable hasher for this algorithm.
+     *
+     * @return a new hasher
+     */
+    public Hasher newHasher() {
+        return Hasher.digest(digestName);
+    }
+
+    /**
+     * Hashes the given data in one shot.
+     *
+     * @param data the data to hash
+     * @return the hash, {@link #getLength()} bytes long
+     */
+    public byte[] hash(byte @NotNull [] data) {
+        if (digestName != null) return pool().digest(data);
+        return newHasher().update(data).finish();
+    }
+
+    /**
+     * Hashes the content of a file, streaming it through a {@value #BUFFER_SIZE}-byte buffer.
+     *
+     * @param file the file to hash
+     * @return the hash, {@link #getLength()} bytes long
+     * @throws IOException if the file cannot be read
+     */
+    public byte[] hash(@NotNull Path file) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        if (digestName == null) {
+            Hasher hasher = newHasher();
+            try (InputStream in = Files.newInputStream(file)) {
+                while ((read = in.read(buffer)) != -1) hasher.update(buffer, 0, read);
+            }
+            return hasher.finish();
+        }
+
+        DigestPool digestPool = pool();
+        MessageDigest digest = digestPool.acquire();
+        try (InputStream in = Files.newInputStream(file)) {
+            while ((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+            return digest.digest();
+        } finally {
+            digestPool.release(digest);
+        }
+    }
+
+    /**
+     * Returns the length of the hashes produced by this algorithm in bytes.
+     *
+     * @return the hash length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns whether this algorithm is a cryptographic digest.
+     *
+     * @return {@code true} for cryptographic digests
+     */
+    public boolean isCryptographic() {
+        return digestName != null;
+    }
+
+    /**
+     * Returns the shared digest pool of a cryptographic algorithm.
+     *
+     * @return the pool
+     * @throws UnsupportedOperationException if this algorithm is not a cryptographic digest
+     */
+    public DigestPool pool() {
+        if (digestName == null) throw new UnsupportedOperationException(name() + " is not a MessageDigest algorithm");
+        DigestPool p = pool;
+        if (p == null) {
+            synchronized (this) {
+                p = pool;
+                if (p == null) pool = p = new DigestPool(digestName);
+            }
+        }
+        return p;
+    }
+}
@@ -0,0 +1,183 @@
+package one.pkg.tiny.utils.hash;
+
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * An incremental, reusable hash computation.
+ * <p>
+ * Data can be fed in any number of {@code update} calls as it becomes available, and {@link #finish()}
+ * returns the result and resets the hasher for the next message. Instances are not thread-safe.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * Hasher hasher = Hash.newHasher();
+ * hasher.update(header).update(payloadBuffer).update("trailer");
+ * byte[] digest = hasher.finish();
+ * }</pre>
+ */
+public abstract class Hasher {
+    private static final int SCRATCH_SIZE = 4096;
+    private byte[] scratch;
+
+    /**
+     * Creates a hasher backed by a new {@link MessageDigest} of the given algorithm.
+     *
+     * @param algorithm the name of the digest algorithm, e.g. {@code SHA-256}
+     * @return a new hasher
+     * @throws IllegalArgumentException if the algorithm is not supported by any installed provider
+     */
+    public static Hasher digest(@NotNull String algorithm) {
+        Validate.notNull(algorithm, "Algorithm must not be null");
+        try {
+            return new DigestHasher(MessageDigest.getInstance(algorithm));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm, e);
+        }
+    }
+
+    /**
+     * Feeds a range of bytes into the hash.
+     *
+     * @param data   the data
+     * @param offset the start offset in {@code data}
+     * @param length the number of bytes to use
+     * @return this hasher
+     */
+    public abstract Hasher update(byte[] data, int offset, int length);
+
+    /**
+     * Feeds all bytes of the array into the hash.
+     *
+     * @param data the data
+     * @return this hasher
+     */
+    public Hasher update(byte @NotNull [] data) {
+        return update(data, 0, data.length);
+    }
+
+    /**
+     * Feeds the remaining bytes of the buffer into the hash and advances its position to its limit.
+     * <p>
+     * Heap buffers are read through their backing array; direct buffers are read in small chunks
+     * without copying the whole buffer onto the heap.
+     *
+     * @param buffer the data
+     * @return this hasher
+     */
+    public Hasher update(@NotNull ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            int position = buffer.position();
+            update(buffer.array(), buffer.arrayOffset() + position, buffer.limit() - position);
+            buffer.position(buffer.limit());
+            return this;
+        }
+        byte[] chunk = scratch();
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            update(chunk, 0, length);
+        }
+        return this;
+    }
+
+    /**
+     * Feeds the UTF-8 encoding of the characters into the hash without creating an intermediate
+     * {@code String} or byte array.
+     * <p>
+     * Unpaired surrogates are encoded as {@code '?'}, matching {@link String#getBytes(java.nio.charset.Charset)}.
+     *
+     * @param chars the characters
+     * @return this hasher
+     */
+    public Hasher update(@NotNull CharSequence chars) {
+        byte[] out = scratch();
+        int pos = 0;
+        int length = chars.length();
+        for (int i = 0; i < length; i++) {
+            if (pos > out.length - 4) {
+                update(out, 0, pos);
+                pos = 0;
+            }
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                out[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                char low;
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(low = chars.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, low);
+                    i++;
+                    out[pos++] = (byte) (0xF0 | (cp >> 18));
+                    out[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    out[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    out[pos++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    out[pos++] = '?';
+                }
+            } else {
+                out[pos++] = (byte) (0xE0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        if (pos > 0) update(out, 0, pos);
+        return this;
+    }
+
+    /**
+     * Completes the computation, returns the result and resets this hasher.
+     *
+     * @return the hash of all data fed since the last reset
+     */
+    public abstract byte[] finish();
+
+    /**
+     * Discards all data fed so far.
+     *
+     * @return this hasher
+     */
+    public abstract Hasher reset();
+
+    private byte[] scratch() {
+        if (scratch == null) scratch = new byte[SCRATCH_SIZE];
+        return scratch;
+    }
+
+    private static final class DigestHasher extends Hasher {
+        private final MessageDigest digest;
+
+        DigestHasher(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public Hasher update(byte[] data, int offset, int length) {
+            digest.update(data, offset, length);
+            return this;
+        }
+
+        @Override
+        public Hasher update(@NotNull ByteBuffer buffer) {
+            digest.update(buffer);
+            return this;
+        }
+
+        @Override
+        public byte[] finish() {
+            return digest.digest();
+        }
+
+        @Override
+        public Hasher reset() {
+            digest.reset();
+            return this;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package one.pkg.tiny.utils.hash;
+
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Table-driven lower-case hexadecimal encoding and decoding.
+ * <p>
+ * The {@code encode}/{@code decode} variants that take a destination array write straight into the
+ * caller's buffer and allocate nothing, which makes them suitable for hot paths such as building cache keys.
+ */
+public final class Hex {
+    private static final byte[] DIGITS = new byte[512];
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        byte[] alphabet = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < 256; i++) {
+            DIGITS[i << 1] = alphabet[i >>> 4];
+            DIGITS[(i << 1) + 1] = alphabet[i & 0xF];
+        }
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) VALUES['0' + i] = (byte) i;
+        for (int i = 0; i < 6; i++) {
+            VALUES['a' + i] = (byte) (10 + i);
+            VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private Hex() {
+    }
+
+    /**
+     * Encodes the bytes as a lower-case hexadecimal string.
+     *
+     * @param data the bytes to encode
+     * @return the hexadecimal string, twice as long as {@code data}
+     */
+    public static String encode(byte @NotNull [] data) {
+        Validate.notNull(data, "Data must not be null");
+        byte[] out = new byte[data.length << 1];
+        encode(data, 0, data.length, out, 0);
+        return new String(out, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Encodes a byte range as ASCII hexadecimal digits into a caller-supplied byte array.
+     *
+     * @param src    the bytes to encode
+     * @param offset the start offset in {@code src}
+     * @param length the number of bytes to encode
+     * @param dst    the destination, needs room for {@code 2 * length} bytes
+     * @param dstOff the start offset in {@code dst}
+     * @return the offset in {@code dst} after the last written digit
+     */
+    public static int encode(byte @NotNull [] src, int offset, int length, byte @NotNull [] dst, int dstOff) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int index = (src[i] & 0xFF) << 1;
+            dst[dstOff++] = DIGITS[index];
+            dst[dstOff++] = DIGITS[index + 1];
+        }
+        return dstOff;
+    }
+
+    /**
+     * Encodes a byte range as hexadecimal digits into a caller-supplied char array.
+     *
+     * @param src    the bytes to encode
+     * @param offset the start offset in {@code src}
+     * @param length the number of bytes to encode
+     * @param dst    the destination, needs room for {@code 2 * length} chars
+     * @param dstOff the start offset in {@code dst}
+     * @return the offset in {@code dst} after the last written digit
+     */
+    public static int encode(byte @NotNull [] src, int offset, int length, char @NotNull [] dst, int dstOff) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int index = (src[i] & 0xFF) << 1;
+            dst[dstOff++] = (char) DIGITS[index];
+            dst[dstOff++] = (char) DIGITS[index + 1];
+        }
+        return dstOff;
+    }
+
+    /**
+     * Decodes a hexadecimal string. Upper- and lower-case digits are accepted.
+     *
+     * @param hex the hexadecimal characters, of even length
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if the input has odd length or contains a non-hexadecimal character
+     */
+    public static byte[] decode(@NotNull CharSequence hex) {
+        Validate.notNull(hex, "Hex must not be null");
+        if ((hex.length() & 1) != 0) throw new IllegalArgumentException("Hex string must have an even length");
+        byte[] out = new byte[hex.length() >>> 1];
+        decode(hex, out, 0);
+        return out;
+    }
+
+    /**
+     * Decodes a hexadecimal string into a caller-supplied byte array.
+     *
+     * @param hex    the hexadecimal characters, of even length
+     * @param dst    the destination, needs room for {@code hex.length() / 2} bytes
+     * @param dstOff the start offset in {@code dst}
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if the input has odd length or contains a non-hexadecimal character
+     */
+    public static int decode(@NotNull CharSequence hex, byte @NotNull [] dst, int dstOff) {
+        int length = hex.length();
+        if ((length & 1) != 0) throw new IllegalArgumentException("Hex string must have an even length");
+        for (int i = 0; i < length; i += 2) {
+            dst[dstOff++] = (byte) ((value(hex, i) << 4) | value(hex, i + 1));
+        }
+        return length >>> 1;
+    }
+
+    private static int value(CharSequence hex, int index) {
+        char c = hex.charAt(index);
+        int v = c < 128 ? VALUES[c] : -1;
+        if (v < 0) throw new IllegalArgumentException("Invalid hex character '" + c + "' at index " + index);
+        return v;
+    }
+}
@@ -0,0 +1,139 @@
+package one.pkg.tiny.utils.hash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * A pure-Java implementation of the 128-bit MurmurHash3 (x64 variant).
+ * <p>
+ * The output of {@link #finish()} is the two 64-bit halves written in little-endian order,
+ * which matches the byte representation used by Guava's {@code Hashing.murmur3_128()}.
+ * The seed is treated as unsigned, as in the reference implementation.
+ */
+public final class Murmur3Hash128 extends Hasher {
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final long seed;
+    private final byte[] buffer = new byte[16];
+    private int buffered;
+    private long total;
+    private long h1, h2;
+
+    /**
+     * Creates a streaming MurmurHash3 hasher with seed {@code 0}.
+     */
+    public Murmur3Hash128() {
+        this(0);
+    }
+
+    /**
+     * Creates a streaming MurmurHash3 hasher.
+     *
+     * @param seed the 32-bit seed
+     */
+    public Murmur3Hash128(int seed) {
+        this.seed = seed & 0xFFFFFFFFL;
+        reset();
+    }
+
+    /**
+     * Computes the 128-bit MurmurHash3 of a byte array with seed {@code 0} in one shot.
+     *
+     * @param data the data
+     * @return the 16-byte hash
+     */
+    public static byte[] hash(byte @NotNull [] data) {
+        return new Murmur3Hash128().update(data).finish();
+    }
+
+    @Override
+    public Hasher update(byte[] data, int offset, int length) {
+        total += length;
+        int end = offset + length;
+        if (buffered > 0) {
+            int fill = Math.min(16 - buffered, length);
+            System.arraycopy(data, offset, buffer, buffered, fill);
+            buffered += fill;
+            offset += fill;
+            if (buffered < 16) return this;
+            block((long) LONG.get(buffer, 0), (long) LONG.get(buffer, 8));
+            buffered = 0;
+        }
+        for (; offset <= end - 16; offset += 16) {
+            block((long) LONG.get(data, offset), (long) LONG.get(data, offset + 8));
+        }
+        if (offset < end) {
+            System.arraycopy(data, offset, buffer, 0, end - offset);
+            buffered = end - offset;
+        }
+        return this;
+    }
+
+    @Override
+    public byte[] finish() {
+        long k1 = 0, k2 = 0;
+        for (int i = buffered - 1; i >= 8; i--) k2 = (k2 << 8) | (buffer[i] & 0xFF);
+        for (int i = Math.min(buffered, 8) - 1; i >= 0; i--) k1 = (k1 << 8) | (buffer[i] & 0xFF);
+        if (buffered > 8) h2 ^= mixK2(k2);
+        if (buffered > 0) h1 ^= mixK1(k1);
+
+        h1 ^= total;
+        h2 ^= total;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        byte[] result = new byte[16];
+        LONG.set(result, 0, h1);
+        LONG.set(result, 8, h2);
+        reset();
+        return result;
+    }
+
+    @Override
+    public Hasher reset() {
+        h1 = seed;
+        h2 = seed;
+        total = 0;
+        buffered = 0;
+        return this;
+    }
+
+    private void block(long k1, long k2) {
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27) + h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        h2 ^= mixK2(k2);
+        h2 = Long.rotateLeft(h2, 31) + h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        return k ^ (k >>> 33);
+    }
+}
@@ -0,0 +1,167 @@
+package one.pkg.tiny.utils.hash;
+
+import one.pkg.tiny.utils.Validate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Range;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Memory-mapped SHA-256 hashing for large files.
+ * <p>
+ * {@link #treeHash(Path)} splits the file into fixed-size segments, hashes the segments in parallel
+ * on a {@link ForkJoinPool} and combines them into a two-level tree digest:
+ * <pre>
+ * leaf[i] = SHA-256(0x00 || segment[i])
+ * root    = SHA-256(0x01 || uint64_be(fileSize) || uint32_be(segmentSize) || leaf[0] || ... || leaf[n - 1])
+ * </pre>
+ * The tree digest depends on the segment size and is <b>not</b> equal to the plain SHA-256 of the file;
+ * both sides of a comparison must use the same segment size.
+ * <p>
+ * {@link #flatHash(Path)} produces the ordinary SHA-256 of the file content (identical to
+ * {@link one.pkg.tiny.utils.Hash#hash(Path)}) by mapping the file sequentially; it cannot be parallelized.
+ */
+public final class ParallelFileHash {
+    /**
+     * The default segment size used for tree hashing, 4 MiB.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int FLAT_MAP_SIZE = 64 * 1024 * 1024;
+    private static final byte LEAF_PREFIX = 0x00;
+    private static final byte NODE_PREFIX = 0x01;
+    private static final DigestPool pool = HashAlgorithm.SHA_256.pool();
+
+    private ParallelFileHash() {
+    }
+
+    /**
+     * Computes the tree digest of a file with the {@link #DEFAULT_SEGMENT_SIZE} on the common pool.
+     *
+     * @param file the file to hash
+     * @return the 32-byte tree digest
+     * @throws IOException if the file cannot be read
+     */
+    public static byte[] treeHash(@NotNull Path file) throws IOException {
+        return treeHash(file, DEFAULT_SEGMENT_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the tree digest of a file.
+     *
+     * @param file        the file to hash
+     * @param segmentSize the size of each independently hashed segment in bytes
+     * @param forkJoin    the pool on which segments are hashed
+     * @return the 32-byte tree digest
+     * @throws IOException if the file cannot be read
+     */
+    public static byte[] treeHash(@NotNull Path file, @Range(from = 1, to = Integer.MAX_VALUE) int segmentSize,
+                                  @NotNull ForkJoinPool forkJoin) throws IOException {
+        checkFile(file);
+        Validate.notNull(forkJoin, "Pool must not be null");
+        if (segmentSize < 1) throw new IllegalArgumentException("Segment size must be positive");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int segments = Math.toIntExact((size + segmentSize - 1) / segmentSize);
+            byte[][] leaves = new byte[segments][];
+            if (segments > 0) {
+                try {
+                    forkJoin.invoke(new SegmentTask(channel, size, segmentSize, leaves, 0, segments));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+
+            MessageDigest digest = pool.acquire();
+            try {
+                digest.update(NODE_PREFIX);
+                digest.update(ByteBuffer.allocate(12).putLong(size).putInt(segmentSize).array());
+                for (byte[] leaf : leaves) digest.update(leaf);
+                return digest.digest();
+            } finally {
+                pool.release(digest);
+            }
+        }
+    }
+
+    /**
+     * Computes the plain SHA-256 of a file by mapping it sequentially.
+     *
+     * @param file the file to hash
+     * @return the 32-byte SHA-256 digest of the file content
+     * @throws IOException if the file cannot be read
+     */
+    public static byte[] flatHash(@NotNull Path file) throws IOException {
+        checkFile(file);
+        MessageDigest digest = pool.acquire();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += FLAT_MAP_SIZE) {
+                long length = Math.min(FLAT_MAP_SIZE, size - position);
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+            return digest.digest();
+        } finally {
+            pool.release(digest);
+        }
+    }
+
+    private static void checkFile(Path file) {
+        Validate.notNull(file, "File must not be null");
+        if (!Files.exists(file)) throw new IllegalArgumentException("File does not exist: " + file);
+        if (!Files.isRegularFile(file)) throw new IllegalArgumentException("File is not a file: " + file);
+    }
+
+    private static final class SegmentTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private final FileChannel channel;
+        private final long size;
+        private final int segmentSize;
+        private final byte[][] leaves;
+        private final int from;
+        private final int to;
+
+        SegmentTask(FileChannel channel, long size, int segmentSize, byte[][] leaves, int from, int to) {
+            this.channel = channel;
+            this.size = size;
+            this.segmentSize = segmentSize;
+            this.leaves = leaves;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SegmentTask(channel, size, segmentSize, leaves, from, mid),
+                        new SegmentTask(channel, size, segmentSize, leaves, mid, to));
+                return;
+            }
+
+            long position = (long) from * segmentSize;
+            long length = Math.min(segmentSize, size - position);
+            MessageDigest digest = pool.acquire();
+            try {
+                digest.update(LEAF_PREFIX);
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                leaves[from] = digest.digest();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                pool.release(digest);
+            }
+        }
+    }
+}
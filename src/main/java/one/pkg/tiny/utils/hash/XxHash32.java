@@ -0,0 +1,168 @@
+package one.pkg.tiny.utils.hash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A pure-Java implementation of the 32-bit xxHash (XXH32) algorithm.
+ * <p>
+ * XXH32 is the checksum of the LZ4 frame format. On 64-bit platforms {@link XxHash64} is faster and
+ * collides less often; use XXH32 where the format requires it. {@link #finish()} returns the hash in its
+ * canonical big-endian form.
+ */
+public final class XxHash32 extends Hasher {
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final int P1 = 0x9E3779B1;
+    private static final int P2 = 0x85EBCA77;
+    private static final int P3 = 0xC2B2AE3D;
+    private static final int P4 = 0x27D4EB2F;
+    private static final int P5 = 0x165667B1;
+
+    private final int seed;
+    private final byte[] buffer = new byte[16];
+    private int buffered;
+    private long total;
+    private int v1, v2, v3, v4;
+
+    /**
+     * Creates a streaming XXH32 hasher with seed {@code 0}.
+     */
+    public XxHash32() {
+        this(0);
+    }
+
+    /**
+     * Creates a streaming XXH32 hasher.
+     *
+     * @param seed the seed
+     */
+    public XxHash32(int seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    /**
+     * Computes the XXH32 hash of a byte range in one shot.
+     *
+     * @param data   the data
+     * @param offset the start offset in {@code data}
+     * @param length the number of bytes to hash
+     * @param seed   the seed
+     * @return the 32-bit hash
+     */
+    public static int hash(byte @NotNull [] data, int offset, int length, int seed) {
+        int end = offset + length;
+        int pos = offset;
+        int h;
+        if (length >= 16) {
+            int a1 = seed + P1 + P2, a2 = seed + P2, a3 = seed, a4 = seed - P1;
+            int limit = end - 16;
+            do {
+                a1 = round(a1, (int) INT.get(data, pos));
+                a2 = round(a2, (int) INT.get(data, pos + 4));
+                a3 = round(a3, (int) INT.get(data, pos + 8));
+                a4 = round(a4, (int) INT.get(data, pos + 12));
+                pos += 16;
+            } while (pos <= limit);
+            h = converge(a1, a2, a3, a4);
+        } else {
+            h = seed + P5;
+        }
+        return complete(h + length, data, pos, end);
+    }
+
+    /**
+     * Computes the XXH32 hash of a byte array with seed {@code 0}.
+     *
+     * @param data the data
+     * @return the 32-bit hash
+     */
+    public static int hash(byte @NotNull [] data) {
+        return hash(data, 0, data.length, 0);
+    }
+
+    @Override
+    public Hasher update(byte[] data, int offset, int length) {
+        total += length;
+        int end = offset + length;
+        if (buffered > 0) {
+            int fill = Math.min(16 - buffered, length);
+            System.arraycopy(data, offset, buffer, buffered, fill);
+            buffered += fill;
+            offset += fill;
+            if (buffered < 16) return this;
+            stripe(buffer, 0);
+            buffered = 0;
+        }
+        for (; offset <= end - 16; offset += 16) stripe(data, offset);
+        if (offset < end) {
+            System.arraycopy(data, offset, buffer, 0, end - offset);
+            buffered = end - offset;
+        }
+        return this;
+    }
+
+    /**
+     * Completes the computation and returns the hash as an {@code int}, then resets this hasher.
+     *
+     * @return the 32-bit hash
+     */
+    public int finishInt() {
+        int h = total >= 16 ? converge(v1, v2, v3, v4) : seed + P5;
+        h = complete(h + (int) total, buffer, 0, buffered);
+        reset();
+        return h;
+    }
+
+    @Override
+    public byte[] finish() {
+        return ByteBuffer.allocate(4).putInt(finishInt()).array();
+    }
+
+    @Override
+    public Hasher reset() {
+        v1 = seed + P1 + P2;
+        v2 = seed + P2;
+        v3 = seed;
+        v4 = seed - P1;
+        total = 0;
+        buffered = 0;
+        return this;
+    }
+
+    private void stripe(byte[] data, int pos) {
+        v1 = round(v1, (int) INT.get(data, pos));
+        v2 = round(v2, (int) INT.get(data, pos + 4));
+        v3 = round(v3, (int) INT.get(data, pos + 8));
+        v4 = round(v4, (int) INT.get(data, pos + 12));
+    }
+
+    private static int round(int acc, int input) {
+        acc += input * P2;
+        return Integer.rotateLeft(acc, 13) * P1;
+    }
+
+    private static int converge(int a1, int a2, int a3, int a4) {
+        return Integer.rotateLeft(a1, 1) + Integer.rotateLeft(a2, 7) + Integer.rotateLeft(a3, 12) + Integer.rotateLeft(a4, 18);
+    }
+
+    private static int complete(int h, byte[] data, int pos, int end) {
+        for (; pos <= end - 4; pos += 4) {
+            h += (int) INT.get(data, pos) * P3;
+            h = Integer.rotateLeft(h, 17) * P4;
+        }
+        for (; pos < end; pos++) {
+            h += (data[pos] & 0xFF) * P5;
+            h = Integer.rotateLeft(h, 11) * P1;
+        }
+        h ^= h >>> 15;
+        h *= P2;
+        h ^= h >>> 13;
+        h *= P3;
+        return h ^ (h >>> 16);
+    }
+}
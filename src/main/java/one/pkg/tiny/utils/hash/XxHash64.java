@@ -0,0 +1,183 @@
+package one.pkg.tiny.utils.hash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A pure-Java implementation of the 64-bit xxHash (XXH64) algorithm.
+ * <p>
+ * XXH64 is a non-cryptographic hash that runs close to memory bandwidth. It is suitable for
+ * integrity checks and deduplication keys, but must not be used where collisions could be forged.
+ * {@link #finish()} returns the hash in its canonical big-endian form.
+ */
+public final class XxHash64 extends Hasher {
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private final long seed;
+    private final byte[] buffer = new byte[32];
+    private int buffered;
+    private long total;
+    private long v1, v2, v3, v4;
+
+    /**
+     * Creates a streaming XXH64 hasher with seed {@code 0}.
+     */
+    public XxHash64() {
+        this(0);
+    }
+
+    /**
+     * Creates a streaming XXH64 hasher.
+     *
+     * @param seed the seed
+     */
+    public XxHash64(long seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    /**
+     * Computes the XXH64 hash of a byte range in one shot.
+     *
+     * @param data   the data
+     * @param offset the start offset in {@code data}
+     * @param length the number of bytes to hash
+     * @param seed   the seed
+     * @return the 64-bit hash
+     */
+    public static long hash(byte @NotNull [] data, int offset, int length, long seed) {
+        int end = offset + length;
+        int pos = offset;
+        long h;
+        if (length >= 32) {
+            long a1 = seed + P1 + P2, a2 = seed + P2, a3 = seed, a4 = seed - P1;
+            int limit = end - 32;
+            do {
+                a1 = round(a1, (long) LONG.get(data, pos));
+                a2 = round(a2, (long) LONG.get(data, pos + 8));
+                a3 = round(a3, (long) LONG.get(data, pos + 16));
+                a4 = round(a4, (long) LONG.get(data, pos + 24));
+                pos += 32;
+            } while (pos <= limit);
+            h = converge(a1, a2, a3, a4);
+        } else {
+            h = seed + P5;
+        }
+        return complete(h + length, data, pos, end);
+    }
+
+    /**
+     * Computes the XXH64 hash of a byte array with seed {@code 0}.
+     *
+     * @param data the data
+     * @return the 64-bit hash
+     */
+    public static long hash(byte @NotNull [] data) {
+        return hash(data, 0, data.length, 0);
+    }
+
+    @Override
+    public Hasher update(byte[] data, int offset, int length) {
+        total += length;
+        int end = offset + length;
+        if (buffered > 0) {
+            int fill = Math.min(32 - buffered, length);
+            System.arraycopy(data, offset, buffer, buffered, fill);
+            buffered += fill;
+            offset += fill;
+            if (buffered < 32) return this;
+            stripe(buffer, 0);
+            buffered = 0;
+        }
+        for (; offset <= end - 32; offset += 32) stripe(data, offset);
+        if (offset < end) {
+            System.arraycopy(data, offset, buffer, 0, end - offset);
+            buffered = end - offset;
+        }
+        return this;
+    }
+
+    /**
+     * Completes the computation and returns the hash as a {@code long}, then resets this hasher.
+     *
+     * @return the 64-bit hash
+     */
+    public long finishLong() {
+        long h = total >= 32 ? converge(v1, v2, v3, v4) : seed + P5;
+        h = complete(h + total, buffer, 0, buffered);
+        reset();
+        return h;
+    }
+
+    @Override
+    public byte[] finish() {
+        return ByteBuffer.allocate(8).putLong(finishLong()).array();
+    }
+
+    @Override
+    public Hasher reset() {
+        v1 = seed + P1 + P2;
+        v2 = seed + P2;
+        v3 = seed;
+        v4 = seed - P1;
+        total = 0;
+        buffered = 0;
+        return this;
+    }
+
+    private void stripe(byte[] data, int pos) {
+        v1 = round(v1, (long) LONG.get(data, pos));
+        v2 = round(v2, (long) LONG.get(data, pos + 8));
+        v3 = round(v3, (long) LONG.get(data, pos + 16));
+        v4 = round(v4, (long) LONG.get(data, pos + 24));
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        return Long.rotateLeft(acc, 31) * P1;
+    }
+
+    private static long merge(long h, long v) {
+        h ^= round(0, v);
+        return h * P1 + P4;
+    }
+
+    private static long converge(long a1, long a2, long a3, long a4) {
+        long h = Long.rotateLeft(a1, 1) + Long.rotateLeft(a2, 7) + Long.rotateLeft(a3, 12) + Long.rotateLeft(a4, 18);
+        h = merge(h, a1);
+        h = merge(h, a2);
+        h = merge(h, a3);
+        return merge(h, a4);
+    }
+
+    private static long complete(long h, byte[] data, int pos, int end) {
+        for (; pos <= end - 8; pos += 8) {
+            h ^= round(0, (long) LONG.get(data, pos));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (pos <= end - 4) {
+            h ^= ((int) INT.get(data, pos) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            pos += 4;
+        }
+        for (; pos < end; pos++) {
+            h ^= (data[pos] & 0xFF) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        return h ^ (h >>> 32);
+    }
+}